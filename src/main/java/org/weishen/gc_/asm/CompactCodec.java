@@ -0,0 +1,241 @@
+package org.weishen.gc_.asm;
+
+import org.weishen.gc_.heap.inter.HeapReader;
+import org.weishen.gc_.heap.inter.HeapWriter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * compact 编码 由 CompactSerializerVisitor 生成的代码调用
+ * <p>
+ * 定长(基本类型)的字段在前 变长的字段在后 各自按声明的顺序依次排列 没有对齐 多字节的值为大端
+ * 所以定长字段的偏移是常量 变长字段需要跳过它前面的变长字段 (see@CompactSerializerVisitor.layout)
+ * - boolean / byte     : 1
+ * - char / short       : 2
+ * - int / float        : 4
+ * - long / double      : 8
+ * - 包装类型           : 1 字节的标记(0 为 null) + 对应的基本类型
+ * - String             : int 长度(UTF-8 字节数 -1 为 null) + UTF-8 字节
+ * - byte[]             : int 长度(-1 为 null) + 字节
+ * <p>
+ * write 返回下一个字段的地址 size 返回变长字段的字节数
+ * read / skip 由享元访问器(see@FlyweightGenerator)生成的代码调用 定长字段直接通过 HeapReader 读取
+ */
+public final class CompactCodec {
+
+    private CompactCodec() {
+    }
+
+    public static long write(HeapWriter out, long p, boolean v) {
+        out.putByte(p, (byte) (v ? 1 : 0));
+        return p + 1;
+    }
+
+    public static long write(HeapWriter out, long p, byte v) {
+        out.putByte(p, v);
+        return p + 1;
+    }
+
+    public static long write(HeapWriter out, long p, char v) {
+        out.putShort(p, (short) v);
+        return p + 2;
+    }
+
+    public static long write(HeapWriter out, long p, short v) {
+        out.putShort(p, v);
+        return p + 2;
+    }
+
+    public static long write(HeapWriter out, long p, int v) {
+        out.putInt(p, v);
+        return p + 4;
+    }
+
+    public static long write(HeapWriter out, long p, float v) {
+        out.putInt(p, Float.floatToRawIntBits(v));
+        return p + 4;
+    }
+
+    public static long write(HeapWriter out, long p, long v) {
+        out.putLong(p, v);
+        return p + 8;
+    }
+
+    public static long write(HeapWriter out, long p, double v) {
+        out.putLong(p, Double.doubleToRawLongBits(v));
+        return p + 8;
+    }
+
+    public static long write(HeapWriter out, long p, Boolean v) {
+        return v == null ? write(out, p, (byte) 0) : write(out, write(out, p, (byte) 1), v.booleanValue());
+    }
+
+    public static long write(HeapWriter out, long p, Byte v) {
+        return v == null ? write(out, p, (byte) 0) : write(out, write(out, p, (byte) 1), v.byteValue());
+    }
+
+    public static long write(HeapWriter out, long p, Character v) {
+        return v == null ? write(out, p, (byte) 0) : write(out, write(out, p, (byte) 1), v.charValue());
+    }
+
+    public static long write(HeapWriter out, long p, Short v) {
+        return v == null ? write(out, p, (byte) 0) : write(out, write(out, p, (byte) 1), v.shortValue());
+    }
+
+    public static long write(HeapWriter out, long p, Integer v) {
+        return v == null ? write(out, p, (byte) 0) : write(out, write(out, p, (byte) 1), v.intValue());
+    }
+
+    public static long write(HeapWriter out, long p, Float v) {
+        return v == null ? write(out, p, (byte) 0) : write(out, write(out, p, (byte) 1), v.floatValue());
+    }
+
+    public static long write(HeapWriter out, long p, Long v) {
+        return v == null ? write(out, p, (byte) 0) : write(out, write(out, p, (byte) 1), v.longValue());
+    }
+
+    public static long write(HeapWriter out, long p, Double v) {
+        return v == null ? write(out, p, (byte) 0) : write(out, write(out, p, (byte) 1), v.doubleValue());
+    }
+
+    public static long write(HeapWriter out, long p, byte[] v) {
+        if (v == null) return write(out, p, -1);
+        p = write(out, p, v.length);
+        out.putBytes(p, v, 0, v.length);
+        return p + v.length;
+    }
+
+    /**
+     * 逐个字符直接写入 UTF-8 不经过 getBytes 的中间数组
+     * 成对的代理字符写成 4 字节 单独的代理字符按 3 字节写入它本身
+     */
+    public static long write(HeapWriter out, long p, String v) {
+        if (v == null) return write(out, p, -1);
+        p = write(out, p, utf8Length(v));
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (c < 0x80) {
+                out.putByte(p++, (byte) c);
+            } else if (c < 0x800) {
+                out.putByte(p++, (byte) (0xC0 | (c >>> 6)));
+                out.putByte(p++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < v.length() && Character.isLowSurrogate(v.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, v.charAt(++i));
+                out.putByte(p++, (byte) (0xF0 | (cp >>> 18)));
+                out.putByte(p++, (byte) (0x80 | ((cp >>> 12) & 0x3F)));
+                out.putByte(p++, (byte) (0x80 | ((cp >>> 6) & 0x3F)));
+                out.putByte(p++, (byte) (0x80 | (cp & 0x3F)));
+            } else {
+                out.putByte(p++, (byte) (0xE0 | (c >>> 12)));
+                out.putByte(p++, (byte) (0x80 | ((c >>> 6) & 0x3F)));
+                out.putByte(p++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return p;
+    }
+
+    public static int size(Boolean v) {
+        return v == null ? 1 : 2;
+    }
+
+    public static int size(Byte v) {
+        return v == null ? 1 : 2;
+    }
+
+    public static int size(Character v) {
+        return v == null ? 1 : 3;
+    }
+
+    public static int size(Short v) {
+        return v == null ? 1 : 3;
+    }
+
+    public static int size(Integer v) {
+        return v == null ? 1 : 5;
+    }
+
+    public static int size(Float v) {
+        return v == null ? 1 : 5;
+    }
+
+    public static int size(Long v) {
+        return v == null ? 1 : 9;
+    }
+
+    public static int size(Double v) {
+        return v == null ? 1 : 9;
+    }
+
+    public static int size(byte[] v) {
+        return v == null ? 4 : 4 + v.length;
+    }
+
+    public static int size(String v) {
+        return v == null ? 4 : 4 + utf8Length(v);
+    }
+
+    /**
+     * 跳过 String / byte[]
+     */
+    public static long skipSized(HeapReader in, long p) {
+        int length = in.getInt(p);
+        return p + 4 + Math.max(length, 0);
+    }
+
+    /**
+     * 跳过包装类型 width 为对应基本类型的字节数
+     */
+    public static long skipBoxed(HeapReader in, long p, int width) {
+        return in.getByte(p) == 0 ? p + 1 : p + 1 + width;
+    }
+
+    public static String readString(HeapReader in, long p) {
+        byte[] bytes = readBytes(in, p);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static byte[] readBytes(HeapReader in, long p) {
+        int length = in.getInt(p);
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.getBytes(p + 4, bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * 读取包装类型 kind 为基本类型的描述符 ('I' 'J' ...)
+     */
+    public static Object readBoxed(HeapReader in, long p, int kind) {
+        if (in.getByte(p) == 0) return null;
+        p++;
+        return switch (kind) {
+            case 'Z' -> in.getByte(p) != 0;
+            case 'B' -> in.getByte(p);
+            case 'C' -> (char) in.getShort(p);
+            case 'S' -> in.getShort(p);
+            case 'I' -> in.getInt(p);
+            case 'F' -> Float.intBitsToFloat(in.getInt(p));
+            case 'J' -> in.getLong(p);
+            case 'D' -> Double.longBitsToDouble(in.getLong(p));
+            default -> throw new IllegalArgumentException("kind : " + (char) kind);
+        };
+    }
+
+    private static int utf8Length(String v) {
+        int length = 0;
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < v.length() && Character.isLowSurrogate(v.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
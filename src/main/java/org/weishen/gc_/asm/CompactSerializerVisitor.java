@@ -0,0 +1,151 @@
+package org.weishen.gc_.asm;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 为增强的类生成 compact 编码 实现 CompactSerializable
+ * <p>
+ * compactSize() : 定长字段的总和是常量 再加上每个变长字段的 CompactCodec.size(field)
+ * compactWrite(): 按 layout 的顺序 p = CompactCodec.write(out, p, this.field)
+ * 字段通过 GETFIELD 直接读取 没有反射
+ * <p>
+ * 编码的字段是类本身声明的(不包含注入的 pointer / size ...) 非 static 非 transient 的实例字段
+ * 父类不是 Object 或者存在不支持的字段类型时 不生成 (see@fieldsOf 返回 null) 这个类依然使用 Java 序列化
+ */
+public class CompactSerializerVisitor extends ClassVisitor {
+
+    public static final String INTERFACE = "org/weishen/gc_/obj_/inter/CompactSerializable";
+
+    private static final String CODEC = "org/weishen/gc_/asm/CompactCodec";
+
+    private static final String WRITER = "Lorg/weishen/gc_/heap/inter/HeapWriter;";
+
+    private static final Set<String> VARIABLE = Set.of(
+            "Ljava/lang/String;", "[B",
+            "Ljava/lang/Boolean;", "Ljava/lang/Byte;", "Ljava/lang/Character;", "Ljava/lang/Short;",
+            "Ljava/lang/Integer;", "Ljava/lang/Float;", "Ljava/lang/Long;", "Ljava/lang/Double;");
+
+    private final List<String[]> fields;
+
+    private String owner;
+
+    /**
+     * @param fields fieldsOf 的结果 {name, descriptor}
+     */
+    public CompactSerializerVisitor(int api, ClassVisitor classVisitor, List<String[]> fields) {
+        super(api, classVisitor);
+        this.fields = fields;
+    }
+
+    /**
+     * 需要编码的字段 {name, descriptor} 不支持时返回 null
+     */
+    public static List<String[]> fieldsOf(ClassReader cr) {
+        if (!"java/lang/Object".equals(cr.getSuperName())) return null;
+        List<String[]> fields = new ArrayList<>();
+        boolean[] supported = {true};
+        cr.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                if ((access & (Opcodes.ACC_STATIC | Opcodes.ACC_TRANSIENT)) == 0) {
+                    if (fixedSize(descriptor) > 0 || VARIABLE.contains(descriptor)) {
+                        fields.add(new String[]{name, descriptor});
+                    } else {
+                        supported[0] = false;
+                    }
+                }
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return supported[0] ? fields : null;
+    }
+
+    /**
+     * 字段在堆中的排列 定长字段在前 变长字段在后 各自保持声明的顺序
+     * 定长字段的偏移因此是常量 享元访问器(see@FlyweightGenerator)使用同一个排列
+     */
+    static List<String[]> layout(List<String[]> fields) {
+        List<String[]> layout = new ArrayList<>(fields.size());
+        for (String[] field : fields) {
+            if (fixedSize(field[1]) > 0) layout.add(field);
+        }
+        for (String[] field : fields) {
+            if (fixedSize(field[1]) == 0) layout.add(field);
+        }
+        return layout;
+    }
+
+    /**
+     * 基本类型的字节数 其他返回 0
+     */
+    static int fixedSize(String descriptor) {
+        return switch (descriptor) {
+            case "Z", "B" -> 1;
+            case "C", "S" -> 2;
+            case "I", "F" -> 4;
+            case "J", "D" -> 8;
+            default -> 0;
+        };
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.owner = name;
+        String[] combined = Arrays.copyOf(interfaces, interfaces.length + 1);
+        combined[interfaces.length] = INTERFACE;
+        super.visit(version, access, name, signature, superName, combined);
+    }
+
+    @Override
+    public void visitEnd() {
+        addCompactSize();
+        addCompactWrite();
+        super.visitEnd();
+    }
+
+    private void addCompactSize() {
+        MethodVisitor mv = super.visitMethod(Opcodes.ACC_PUBLIC, "compactSize", "()I", null, null);
+        mv.visitCode();
+        int fixed = 0;
+        for (String[] field : fields) {
+            fixed += fixedSize(field[1]);
+        }
+        mv.visitLdcInsn(fixed);
+        for (String[] field : fields) {
+            if (fixedSize(field[1]) > 0) continue;
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitFieldInsn(Opcodes.GETFIELD, owner, field[0], field[1]);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, CODEC, "size", "(" + field[1] + ")I", false);
+            mv.visitInsn(Opcodes.IADD);
+        }
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(3, 1);
+        mv.visitEnd();
+    }
+
+    private void addCompactWrite() {
+        MethodVisitor mv = super.visitMethod(Opcodes.ACC_PUBLIC, "compactWrite", "(" + WRITER + "J)V", null, null);
+        mv.visitCode();
+        // 0: this 1: out 2-3: p
+        for (String[] field : layout(fields)) {
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitVarInsn(Opcodes.LLOAD, 2);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitFieldInsn(Opcodes.GETFIELD, owner, field[0], field[1]);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, CODEC, "write", "(" + WRITER + "J" + field[1] + ")J", false);
+            mv.visitVarInsn(Opcodes.LSTORE, 2);
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(6, 4);
+        mv.visitEnd();
+    }
+}
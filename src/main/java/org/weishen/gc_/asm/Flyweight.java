@@ -0,0 +1,305 @@
+package org.weishen.gc_.asm;
+
+import org.weishen.gc_.heap.ObjectHeader;
+import org.weishen.gc_.heap.inter.HeapMemory;
+import org.weishen.gc_.heap.inter.HeapReader;
+import org.weishen.gc_.heap.inter.HeapWriter;
+import org.weishen.gc_.heap.inter.SimulatedHeap;
+import org.weishen.gc_.obj_.inter.SimulatedObj;
+
+import java.util.Arrays;
+
+/**
+ * 增强类型的享元访问器 直接从模拟堆中读取字段 不需要反序列化
+ * <p>
+ * 每个 CompactSerializable 的类型在第一次使用时生成一个子类 (see@FlyweightGenerator) 之后共享同一个实例
+ * 访问器本身没有状态 对象由 (heap, pointer) 指定:
+ * <pre>
+ * Flyweight fw = Flyweight.of(Order.class);
+ * int no = fw.indexOf("no");                       // 字段的下标 只需要查一次
+ * String s = (String) fw.getObject(heap, so.getPointer(), no);
+ * </pre>
+ * 生成的 getXxx 按字段下标 switch 定长字段是 heap.getXxx(pointer + 常量偏移) 偏移从对象头之后开始 (see@ObjectHeader)
+ * 变长字段(String byte[] 包装类型)跳过它前面的变长字段之后读取
+ * <p>
+ * 写入同样直接修改对象在堆中的字节 不重新序列化 不重新分配:
+ * - 定长字段 : setXxx 在常量偏移处覆盖 heap.putXxx(pointer + 常量偏移, value)
+ * - 变长字段 : setObject 在原来的块内替换 后面的变长字段整体平移
+ *             新的 size 超过 aligningSize 时才重新分配(see@SimulatedHeap.reallocate) 对象的 pointer 随之更新
+ * 写入只修改堆中的副本 Java 实例上的字段保持不变
+ * <p>
+ * 字段的类型和方法不匹配时抛出 IllegalArgumentException
+ * 指针需要是对象当前的地址 对象被移动(压缩 晋升)之后使用新的 getPointer()
+ */
+public abstract class Flyweight {
+
+    private static final ClassValue<Flyweight> FLYWEIGHTS = new ClassValue<>() {
+        @Override
+        protected Flyweight computeValue(Class<?> type) {
+            return FlyweightGenerator.generate(type);
+        }
+    };
+
+    /**
+     * 字段按堆中的排列 (see@CompactSerializerVisitor.layout)
+     */
+    private final String[] names;
+
+    private final String[] descriptors;
+
+    /**
+     * 第一个变长字段的偏移 对象头加上定长部分的字节数
+     */
+    private final int variableOffset;
+
+    protected Flyweight(String[] names, String[] descriptors) {
+        this.names = names;
+        this.descriptors = descriptors;
+        int offset = ObjectHeader.SIZE;
+        for (String descriptor : descriptors) {
+            offset += CompactSerializerVisitor.fixedSize(descriptor);
+        }
+        this.variableOffset = offset;
+    }
+
+    /**
+     * 类型的享元访问器
+     *
+     * @throws IllegalArgumentException 类型没有 compact 编码(没有被增强 或者有不支持的字段)
+     */
+    public static Flyweight of(Class<?> type) {
+        return FLYWEIGHTS.get(type);
+    }
+
+    public int indexOf(String field) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(field)) return i;
+        }
+        throw new IllegalArgumentException("no field : " + field);
+    }
+
+    public String[] getFieldNames() {
+        return Arrays.copyOf(names, names.length);
+    }
+
+    /**
+     * 按字段的类型读取 基本类型被装箱 通用但较慢的路径
+     */
+    public Object load(HeapReader heap, SimulatedObj so, String field) {
+        int index = indexOf(field);
+        long pointer = so.getPointer();
+        return switch (descriptors[index]) {
+            case "Z" -> getBoolean(heap, pointer, index);
+            case "B" -> getByte(heap, pointer, index);
+            case "C" -> getChar(heap, pointer, index);
+            case "S" -> getShort(heap, pointer, index);
+            case "I" -> getInt(heap, pointer, index);
+            case "F" -> getFloat(heap, pointer, index);
+            case "J" -> getLong(heap, pointer, index);
+            case "D" -> getDouble(heap, pointer, index);
+            default -> getObject(heap, pointer, index);
+        };
+    }
+
+    /**
+     * 按字段的类型写入 基本类型需要传入对应的包装类型 通用但较慢的路径
+     *
+     * @param heap 对象所在的堆 需要实现 HeapMemory
+     */
+    public void store(SimulatedHeap heap, SimulatedObj so, String field, Object value) throws Exception {
+        int index = indexOf(field);
+        HeapWriter writer = (HeapWriter) heap;
+        long pointer = so.getPointer();
+        try {
+            switch (descriptors[index]) {
+                case "Z" -> setBoolean(writer, pointer, index, (Boolean) value);
+                case "B" -> setByte(writer, pointer, index, (Byte) value);
+                case "C" -> setChar(writer, pointer, index, (Character) value);
+                case "S" -> setShort(writer, pointer, index, (Short) value);
+                case "I" -> setInt(writer, pointer, index, (Integer) value);
+                case "F" -> setFloat(writer, pointer, index, (Float) value);
+                case "J" -> setLong(writer, pointer, index, (Long) value);
+                case "D" -> setDouble(writer, pointer, index, (Double) value);
+                default -> setObject(heap, so, index, value);
+            }
+        } catch (ClassCastException | NullPointerException e) {
+            throw new IllegalArgumentException("field " + field + " : " + descriptors[index] + " ,value : " + value, e);
+        }
+    }
+
+    /**
+     * 替换变长字段(String byte[] 包装类型)
+     * 1: 跳过前面的变长字段 找到字段的 [start, end)
+     * 2: 新的 size 超过 aligningSize 时 先 reallocate 到新的块 (同一个代)
+     * 3: 暂存字段之后的部分 写入新的值 再写回后面的部分 缩小时把多出来的字节清零
+     *
+     * @param heap 对象所在的堆 需要实现 HeapMemory
+     */
+    public void setObject(SimulatedHeap heap, SimulatedObj so, int field, Object value) throws Exception {
+        if (field < 0 || field >= descriptors.length) throw mismatch(field, "object");
+        String descriptor = descriptors[field];
+        if (CompactSerializerVisitor.fixedSize(descriptor) > 0 || !accepts(descriptor, value)) {
+            throw mismatch(field, value == null ? "null" : value.getClass().getName());
+        }
+        HeapMemory memory = (HeapMemory) heap;
+        long pointer = so.getPointer();
+        long start = pointer + variableOffset;
+        for (int i = 0; i < field; i++) {
+            if (CompactSerializerVisitor.fixedSize(descriptors[i]) == 0) start = skip(memory, start, descriptors[i]);
+        }
+        long end = skip(memory, start, descriptor);
+        int startOffset = (int) (start - pointer);
+        int endOffset = (int) (end - pointer);
+        int size = so.getSize();
+        int newSize = size - (endOffset - startOffset) + sizeOf(descriptor, value);
+        if (newSize > so.getAligningSize()) {
+            int newAligningSize = Math.max(8, (newSize + 7) & ~7);
+            pointer = heap.reallocate(pointer, so.getAligningSize(), newAligningSize);
+            so.setPointer(pointer);
+            so.setAligningSize(newAligningSize);
+        }
+        byte[] tail = new byte[size - endOffset];
+        memory.getBytes(pointer + endOffset, tail, 0, tail.length);
+        long p = write(memory, pointer + startOffset, descriptor, value);
+        memory.putBytes(p, tail, 0, tail.length);
+        if (newSize < size) {
+            memory.putBytes(pointer + newSize, new byte[size - newSize], 0, size - newSize);
+        }
+        so.setSize(newSize);
+    }
+
+    public void setBoolean(HeapWriter heap, long pointer, int field, boolean value) {
+        throw mismatch(field, "boolean");
+    }
+
+    public void setByte(HeapWriter heap, long pointer, int field, byte value) {
+        throw mismatch(field, "byte");
+    }
+
+    public void setChar(HeapWriter heap, long pointer, int field, char value) {
+        throw mismatch(field, "char");
+    }
+
+    public void setShort(HeapWriter heap, long pointer, int field, short value) {
+        throw mismatch(field, "short");
+    }
+
+    public void setInt(HeapWriter heap, long pointer, int field, int value) {
+        throw mismatch(field, "int");
+    }
+
+    public void setFloat(HeapWriter heap, long pointer, int field, float value) {
+        throw mismatch(field, "float");
+    }
+
+    public void setLong(HeapWriter heap, long pointer, int field, long value) {
+        throw mismatch(field, "long");
+    }
+
+    public void setDouble(HeapWriter heap, long pointer, int field, double value) {
+        throw mismatch(field, "double");
+    }
+
+    public boolean getBoolean(HeapReader heap, long pointer, int field) {
+        throw mismatch(field, "boolean");
+    }
+
+    public byte getByte(HeapReader heap, long pointer, int field) {
+        throw mismatch(field, "byte");
+    }
+
+    public char getChar(HeapReader heap, long pointer, int field) {
+        throw mismatch(field, "char");
+    }
+
+    public short getShort(HeapReader heap, long pointer, int field) {
+        throw mismatch(field, "short");
+    }
+
+    public int getInt(HeapReader heap, long pointer, int field) {
+        throw mismatch(field, "int");
+    }
+
+    public float getFloat(HeapReader heap, long pointer, int field) {
+        throw mismatch(field, "float");
+    }
+
+    public long getLong(HeapReader heap, long pointer, int field) {
+        throw mismatch(field, "long");
+    }
+
+    public double getDouble(HeapReader heap, long pointer, int field) {
+        throw mismatch(field, "double");
+    }
+
+    /**
+     * String byte[] 和包装类型
+     */
+    public Object getObject(HeapReader heap, long pointer, int field) {
+        throw mismatch(field, "object");
+    }
+
+    private static boolean accepts(String descriptor, Object value) {
+        if (value == null) return true;
+        return switch (descriptor) {
+            case "Ljava/lang/String;" -> value instanceof String;
+            case "[B" -> value instanceof byte[];
+            case "Ljava/lang/Boolean;" -> value instanceof Boolean;
+            case "Ljava/lang/Byte;" -> value instanceof Byte;
+            case "Ljava/lang/Character;" -> value instanceof Character;
+            case "Ljava/lang/Short;" -> value instanceof Short;
+            case "Ljava/lang/Integer;" -> value instanceof Integer;
+            case "Ljava/lang/Float;" -> value instanceof Float;
+            case "Ljava/lang/Long;" -> value instanceof Long;
+            case "Ljava/lang/Double;" -> value instanceof Double;
+            default -> false;
+        };
+    }
+
+    private static long skip(HeapReader heap, long p, String descriptor) {
+        return switch (descriptor) {
+            case "Ljava/lang/String;", "[B" -> CompactCodec.skipSized(heap, p);
+            case "Ljava/lang/Boolean;", "Ljava/lang/Byte;" -> CompactCodec.skipBoxed(heap, p, 1);
+            case "Ljava/lang/Character;", "Ljava/lang/Short;" -> CompactCodec.skipBoxed(heap, p, 2);
+            case "Ljava/lang/Integer;", "Ljava/lang/Float;" -> CompactCodec.skipBoxed(heap, p, 4);
+            default -> CompactCodec.skipBoxed(heap, p, 8);
+        };
+    }
+
+    private static int sizeOf(String descriptor, Object value) {
+        return switch (descriptor) {
+            case "Ljava/lang/String;" -> CompactCodec.size((String) value);
+            case "[B" -> CompactCodec.size((byte[]) value);
+            case "Ljava/lang/Boolean;" -> CompactCodec.size((Boolean) value);
+            case "Ljava/lang/Byte;" -> CompactCodec.size((Byte) value);
+            case "Ljava/lang/Character;" -> CompactCodec.size((Character) value);
+            case "Ljava/lang/Short;" -> CompactCodec.size((Short) value);
+            case "Ljava/lang/Integer;" -> CompactCodec.size((Integer) value);
+            case "Ljava/lang/Float;" -> CompactCodec.size((Float) value);
+            case "Ljava/lang/Long;" -> CompactCodec.size((Long) value);
+            default -> CompactCodec.size((Double) value);
+        };
+    }
+
+    private static long write(HeapWriter heap, long p, String descriptor, Object value) {
+        return switch (descriptor) {
+            case "Ljava/lang/String;" -> CompactCodec.write(heap, p, (String) value);
+            case "[B" -> CompactCodec.write(heap, p, (byte[]) value);
+            case "Ljava/lang/Boolean;" -> CompactCodec.write(heap, p, (Boolean) value);
+            case "Ljava/lang/Byte;" -> CompactCodec.write(heap, p, (Byte) value);
+            case "Ljava/lang/Character;" -> CompactCodec.write(heap, p, (Character) value);
+            case "Ljava/lang/Short;" -> CompactCodec.write(heap, p, (Short) value);
+            case "Ljava/lang/Integer;" -> CompactCodec.write(heap, p, (Integer) value);
+            case "Ljava/lang/Float;" -> CompactCodec.write(heap, p, (Float) value);
+            case "Ljava/lang/Long;" -> CompactCodec.write(heap, p, (Long) value);
+            default -> CompactCodec.write(heap, p, (Double) value);
+        };
+    }
+
+    private IllegalArgumentException mismatch(int field, String type) {
+        if (field < 0 || field >= names.length) {
+            return new IllegalArgumentException("field index : " + field + " ,illegality.");
+        }
+        return new IllegalArgumentException("field " + names[field] + " : " + descriptors[field] + " is not " + type);
+    }
+}
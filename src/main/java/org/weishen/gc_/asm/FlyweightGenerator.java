@@ -0,0 +1,329 @@
+package org.weishen.gc_.asm;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.weishen.gc_.heap.ObjectHeader;
+import org.weishen.gc_.obj_.inter.CompactSerializable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 生成 Flyweight 的子类 <类型>$Flyweight 定义在类型所在的包中
+ * <p>
+ * 字段的排列来自类型原始的字节码 (ClassReader + CompactSerializerVisitor.fieldsOf/layout)
+ * 与增强时生成的 compactWrite 使用同一份排列
+ * <p>
+ * 对每种读写方法(getInt setInt getObject ...) 只生成包含对应类型字段的 lookupswitch 其他下标交给父类抛出异常:
+ * <pre>
+ * public int getInt(HeapReader heap, long pointer, int field) {
+ *     switch (field) {
+ *         case 2: return heap.getInt(pointer + 24);
+ *         default: return super.getInt(heap, pointer, field);
+ *     }
+ * }
+ * </pre>
+ * 变长字段的写入(setObject)可能需要平移和重新分配 不生成 由 Flyweight 实现
+ */
+final class FlyweightGenerator {
+
+    private static final String SUPER = "org/weishen/gc_/asm/Flyweight";
+
+    private static final String CODEC = "org/weishen/gc_/asm/CompactCodec";
+
+    private static final String READER = "org/weishen/gc_/heap/inter/HeapReader";
+
+    private static final String WRITER = "org/weishen/gc_/heap/inter/HeapWriter";
+
+    private FlyweightGenerator() {
+    }
+
+    static Flyweight generate(Class<?> type) {
+        if (!CompactSerializable.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException(type.getName() + " is not CompactSerializable.");
+        }
+        List<String[]> layout = CompactSerializerVisitor.layout(fieldsOf(type));
+        String[] names = new String[layout.size()];
+        String[] descriptors = new String[layout.size()];
+        for (int i = 0; i < layout.size(); i++) {
+            names[i] = layout.get(i)[0];
+            descriptors[i] = layout.get(i)[1];
+        }
+        String name = type.getName().replace('.', '/') + "$Flyweight";
+        byte[] bytes = generate(name, descriptors);
+        try {
+            Class<?> flyweight = MethodHandles.privateLookupIn(type, MethodHandles.lookup()).defineClass(bytes);
+            return (Flyweight) flyweight.getConstructor(String[].class, String[].class).newInstance(names, descriptors);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("define flyweight of " + type.getName() + " failed.", e);
+        }
+    }
+
+    /**
+     * 原始的 class 文件(资源不受 ClassFileTransformer 影响) 只包含类型本身声明的字段
+     */
+    private static List<String[]> fieldsOf(Class<?> type) {
+        String resource = type.getName().replace('.', '/') + ".class";
+        ClassLoader loader = type.getClassLoader() == null ? ClassLoader.getSystemClassLoader() : type.getClassLoader();
+        try (InputStream in = loader.getResourceAsStream(resource)) {
+            if (in == null) throw new IllegalArgumentException("class file of " + type.getName() + " not found.");
+            List<String[]> fields = CompactSerializerVisitor.fieldsOf(new ClassReader(in));
+            if (fields == null) throw new IllegalArgumentException(type.getName() + " has no compact layout.");
+            return fields;
+        } catch (IOException e) {
+            throw new IllegalStateException("read class file of " + type.getName() + " failed.", e);
+        }
+    }
+
+    private static byte[] generate(String name, String[] descriptors) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, name, null, SUPER, null);
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "([Ljava/lang/String;[Ljava/lang/String;)V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitVarInsn(Opcodes.ALOAD, 1);
+        init.visitVarInsn(Opcodes.ALOAD, 2);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, SUPER, "<init>", "([Ljava/lang/String;[Ljava/lang/String;)V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        long[] offsets = new long[descriptors.length];
+        // 字段在对象头之后
+        long fixed = ObjectHeader.SIZE;
+        for (int i = 0; i < descriptors.length; i++) {
+            offsets[i] = fixed;
+            fixed += CompactSerializerVisitor.fixedSize(descriptors[i]);
+        }
+        for (String getter : new String[]{"Z", "B", "C", "S", "I", "F", "J", "D", "Ljava/lang/Object;"}) {
+            List<Integer> fields = new ArrayList<>();
+            for (int i = 0; i < descriptors.length; i++) {
+                if (getterOf(descriptors[i]).equals(getter)) fields.add(i);
+            }
+            if (!fields.isEmpty()) {
+                addGetter(cw, getter, fields, descriptors, offsets, fixed);
+                if (!getter.equals("Ljava/lang/Object;")) addSetter(cw, getter, fields, offsets);
+            }
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static String getterOf(String descriptor) {
+        return CompactSerializerVisitor.fixedSize(descriptor) > 0 ? descriptor : "Ljava/lang/Object;";
+    }
+
+    private static void addGetter(ClassWriter cw, String getter, List<Integer> fields, String[] descriptors,
+                                  long[] offsets, long fixed) {
+        String method = switch (getter) {
+            case "Z" -> "getBoolean";
+            case "B" -> "getByte";
+            case "C" -> "getChar";
+            case "S" -> "getShort";
+            case "I" -> "getInt";
+            case "F" -> "getFloat";
+            case "J" -> "getLong";
+            case "D" -> "getDouble";
+            default -> "getObject";
+        };
+        String descriptor = "(L" + READER + ";JI)" + getter;
+        int returnOpcode = switch (getter) {
+            case "J" -> Opcodes.LRETURN;
+            case "F" -> Opcodes.FRETURN;
+            case "D" -> Opcodes.DRETURN;
+            case "Ljava/lang/Object;" -> Opcodes.ARETURN;
+            default -> Opcodes.IRETURN;
+        };
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method, descriptor, null, null);
+        mv.visitCode();
+        // 0: this 1: heap 2-3: pointer 4: field 5-6: 变长字段的地址
+        int[] keys = new int[fields.size()];
+        Label[] labels = new Label[fields.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = fields.get(i);
+            labels[i] = new Label();
+        }
+        Label dflt = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 4);
+        mv.visitLookupSwitchInsn(dflt, keys, labels);
+        for (int i = 0; i < keys.length; i++) {
+            mv.visitLabel(labels[i]);
+            int field = keys[i];
+            if (getter.equals("Ljava/lang/Object;")) {
+                readVariable(mv, field, descriptors, fixed);
+            } else {
+                readFixed(mv, descriptors[field], offsets[field]);
+            }
+            mv.visitInsn(returnOpcode);
+        }
+        mv.visitLabel(dflt);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitVarInsn(Opcodes.LLOAD, 2);
+        mv.visitVarInsn(Opcodes.ILOAD, 4);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, SUPER, method, descriptor, false);
+        mv.visitInsn(returnOpcode);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void addSetter(ClassWriter cw, String setter, List<Integer> fields, long[] offsets) {
+        String method = "set" + switch (setter) {
+            case "Z" -> "Boolean";
+            case "B" -> "Byte";
+            case "C" -> "Char";
+            case "S" -> "Short";
+            case "I" -> "Int";
+            case "F" -> "Float";
+            case "J" -> "Long";
+            default -> "Double";
+        };
+        String descriptor = "(L" + WRITER + ";JI" + setter + ")V";
+        int loadOpcode = switch (setter) {
+            case "J" -> Opcodes.LLOAD;
+            case "F" -> Opcodes.FLOAD;
+            case "D" -> Opcodes.DLOAD;
+            default -> Opcodes.ILOAD;
+        };
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method, descriptor, null, null);
+        mv.visitCode();
+        // 0: this 1: heap 2-3: pointer 4: field 5(-6): value
+        int[] keys = new int[fields.size()];
+        Label[] labels = new Label[fields.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = fields.get(i);
+            labels[i] = new Label();
+        }
+        Label dflt = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 4);
+        mv.visitLookupSwitchInsn(dflt, keys, labels);
+        for (int i = 0; i < keys.length; i++) {
+            mv.visitLabel(labels[i]);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitVarInsn(Opcodes.LLOAD, 2);
+            mv.visitLdcInsn(offsets[keys[i]]);
+            mv.visitInsn(Opcodes.LADD);
+            mv.visitVarInsn(loadOpcode, 5);
+            switch (setter) {
+                case "Z", "B" -> mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, WRITER, "putByte", "(JB)V", true);
+                case "C", "S" -> mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, WRITER, "putShort", "(JS)V", true);
+                case "I" -> mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, WRITER, "putInt", "(JI)V", true);
+                case "F" -> {
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", false);
+                    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, WRITER, "putInt", "(JI)V", true);
+                }
+                case "J" -> mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, WRITER, "putLong", "(JJ)V", true);
+                default -> {
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false);
+                    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, WRITER, "putLong", "(JJ)V", true);
+                }
+            }
+            mv.visitInsn(Opcodes.RETURN);
+        }
+        mv.visitLabel(dflt);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitVarInsn(Opcodes.LLOAD, 2);
+        mv.visitVarInsn(Opcodes.ILOAD, 4);
+        mv.visitVarInsn(loadOpcode, 5);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, SUPER, method, descriptor, false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * heap.getXxx(pointer + offset)
+     */
+    private static void readFixed(MethodVisitor mv, String descriptor, long offset) {
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitVarInsn(Opcodes.LLOAD, 2);
+        mv.visitLdcInsn(offset);
+        mv.visitInsn(Opcodes.LADD);
+        switch (descriptor) {
+            case "Z", "B" -> mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, READER, "getByte", "(J)B", true);
+            case "C" -> {
+                mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, READER, "getShort", "(J)S", true);
+                mv.visitInsn(Opcodes.I2C);
+            }
+            case "S" -> mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, READER, "getShort", "(J)S", true);
+            case "I" -> mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, READER, "getInt", "(J)I", true);
+            case "F" -> {
+                mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, READER, "getInt", "(J)I", true);
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F", false);
+            }
+            case "J" -> mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, READER, "getLong", "(J)J", true);
+            case "D" -> {
+                mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, READER, "getLong", "(J)J", true);
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false);
+            }
+            default -> throw new IllegalArgumentException(descriptor);
+        }
+    }
+
+    /**
+     * 从定长部分之后开始 跳过前面的变长字段 再读取
+     */
+    private static void readVariable(MethodVisitor mv, int field, String[] descriptors, long fixed) {
+        mv.visitVarInsn(Opcodes.LLOAD, 2);
+        mv.visitLdcInsn(fixed);
+        mv.visitInsn(Opcodes.LADD);
+        mv.visitVarInsn(Opcodes.LSTORE, 5);
+        for (int i = 0; i < field; i++) {
+            if (CompactSerializerVisitor.fixedSize(descriptors[i]) > 0) continue;
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitVarInsn(Opcodes.LLOAD, 5);
+            if (isSized(descriptors[i])) {
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, CODEC, "skipSized", "(L" + READER + ";J)J", false);
+            } else {
+                mv.visitLdcInsn(CompactSerializerVisitor.fixedSize(primitiveOf(descriptors[i])));
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, CODEC, "skipBoxed", "(L" + READER + ";JI)J", false);
+            }
+            mv.visitVarInsn(Opcodes.LSTORE, 5);
+        }
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitVarInsn(Opcodes.LLOAD, 5);
+        switch (descriptors[field]) {
+            case "Ljava/lang/String;" ->
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, CODEC, "readString", "(L" + READER + ";J)Ljava/lang/String;", false);
+            case "[B" -> mv.visitMethodInsn(Opcodes.INVOKESTATIC, CODEC, "readBytes", "(L" + READER + ";J)[B", false);
+            default -> {
+                mv.visitLdcInsn((int) primitiveOf(descriptors[field]).charAt(0));
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, CODEC, "readBoxed", "(L" + READER + ";JI)Ljava/lang/Object;", false);
+            }
+        }
+    }
+
+    private static boolean isSized(String descriptor) {
+        return descriptor.equals("Ljava/lang/String;") || descriptor.equals("[B");
+    }
+
+    /**
+     * 包装类型对应的基本类型描述符
+     */
+    private static String primitiveOf(String boxed) {
+        return switch (boxed) {
+            case "Ljava/lang/Boolean;" -> "Z";
+            case "Ljava/lang/Byte;" -> "B";
+            case "Ljava/lang/Character;" -> "C";
+            case "Ljava/lang/Short;" -> "S";
+            case "Ljava/lang/Integer;" -> "I";
+            case "Ljava/lang/Float;" -> "F";
+            case "Ljava/lang/Long;" -> "J";
+            case "Ljava/lang/Double;" -> "D";
+            default -> throw new IllegalArgumentException(boxed);
+        };
+    }
+}
@@ -5,6 +5,7 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.weishen.gc_.asm.inter.MethodGenerator;
+import org.weishen.gc_.heap.CompressedPointers;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -19,6 +20,8 @@ import java.util.function.Consumer;
  * <p>
  * SimulatedObj 会被申明成一个接口 并使用ASM隐式实现
  * see@org.weishen.gc_.obj_.SimulatedObj
+ * <p>
+ * 字段类型都支持时 同时生成 compact 编码 (see@CompactSerializerVisitor) memSet 不再需要 ObjectOutputStream
  */
 public class NewEhASM {
 
@@ -46,15 +49,18 @@ public class NewEhASM {
         ClassVisitor size = new AddFieldClassVisitor(Opcodes.ASM9, cw, "size", Opcodes.ACC_PUBLIC, "I", null);
 
         ClassVisitor aligningSize = new AddFieldClassVisitor(Opcodes.ASM9, size, "aligningSize", Opcodes.ACC_PUBLIC, "I", null);
-        //pointer int
-        ClassVisitor pointer = new AddFieldClassVisitor(Opcodes.ASM9, aligningSize, "pointer", Opcodes.ACC_PUBLIC, "I", null);
+        //pointer long (堆可以超过2GB) 开启压缩指针时是 int (pointer >>> 3 最多 32GB) see@CompressedPointers
+        boolean compressed = CompressedPointers.isEnabled();
+        ClassVisitor pointer = new AddFieldClassVisitor(Opcodes.ASM9, aligningSize, "pointer", Opcodes.ACC_PUBLIC, compressed ? "I" : "J", null);
         //isRoot bool
         ClassVisitor isRoot = new AddFieldClassVisitor(Opcodes.ASM9, pointer, "isRoot", Opcodes.ACC_PUBLIC, "Z", null);
+        //age int (经历过的 minor GC 次数)
+        ClassVisitor age = new AddFieldClassVisitor(Opcodes.ASM9, isRoot, "age", Opcodes.ACC_PUBLIC, "I", null);
         //interface Serializable
-        EnhancedClassVisitor addInterfaces = new EnhancedClassVisitor(Opcodes.ASM9, isRoot, "size", Opcodes.ACC_PUBLIC, "I", null, "java/io/Serializable", "org/weishen/gc_/obj_/inter/SimulatedObj");
+        EnhancedClassVisitor addInterfaces = new EnhancedClassVisitor(Opcodes.ASM9, age, "size", Opcodes.ACC_PUBLIC, "I", null, "java/io/Serializable", "org/weishen/gc_/obj_/inter/SimulatedObj");
 
         // get/set
-        List<Consumer<MethodGenerator>> getSetConsumers = new ArrayList<>(6);
+        List<Consumer<MethodGenerator>> getSetConsumers = new ArrayList<>(10);
         getSetConsumers.add((x) -> {
             x.addGetter(cw, "size", "I");
         });
@@ -68,10 +74,12 @@ public class NewEhASM {
             x.addSetter(cw, "aligningSize", "I");
         });
         getSetConsumers.add((x) -> {
-            x.addGetter(cw, "pointer", "I");
+            if (compressed) x.addNarrowGetter(cw, "pointer");
+            else x.addGetter(cw, "pointer", "J");
         });
         getSetConsumers.add((x) -> {
-            x.addSetter(cw, "pointer", "I");
+            if (compressed) x.addNarrowSetter(cw, "pointer");
+            else x.addSetter(cw, "pointer", "J");
         });
         getSetConsumers.add((x) -> {
             x.addGetter(cw, "isRoot", "Z");
@@ -79,6 +87,12 @@ public class NewEhASM {
         getSetConsumers.add((x) -> {
             x.addSetter(cw, "isRoot", "Z");
         });
+        getSetConsumers.add((x) -> {
+            x.addGetter(cw, "age", "I");
+        });
+        getSetConsumers.add((x) -> {
+            x.addSetter(cw, "age", "I");
+        });
 
         List<Consumer<MethodGenerator>> toStringConsumers = new ArrayList<>(1);
 
@@ -92,7 +106,12 @@ public class NewEhASM {
                 ,new GeneralMethodAdderVisitor.MethodsAndType(toStringConsumers,MethodGenerator.METHOD_TO_STRING)
         );
 
-        cr.accept(generalMethodAdderVisitor, 0);
+        // compact 编码只看类本身声明的字段 需要在注入之前扫描
+        List<String[]> compactFields = CompactSerializerVisitor.fieldsOf(cr);
+        ClassVisitor top = compactFields == null ? generalMethodAdderVisitor
+                : new CompactSerializerVisitor(Opcodes.ASM9, generalMethodAdderVisitor, compactFields);
+
+        cr.accept(top, 0);
 
         return cw.toByteArray();
     }
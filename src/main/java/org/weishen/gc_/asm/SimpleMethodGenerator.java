@@ -10,6 +10,8 @@ import java.util.Set;
 
 public class SimpleMethodGenerator implements MethodGenerator {
 
+    private static final String COMPRESSED_POINTERS = "org/weishen/gc_/heap/CompressedPointers";
+
     private String ownerClass;
     private final Set<String> existingMethods = new HashSet<>();
 
@@ -50,6 +52,46 @@ public class SimpleMethodGenerator implements MethodGenerator {
             existingMethods.add(methodName);
         }
     }
+    /**
+     * 压缩指针的 getter 字段是 int (narrow) 返回解码后的 long
+     * see@org.weishen.gc_.heap.CompressedPointers
+     */
+    public void addNarrowGetter(ClassVisitor cv, String fieldName) {
+        String methodName = "get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+        String methodDesc = "()J";
+        if (!existingMethods.contains(methodName + methodDesc)) {
+            MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC, methodName, methodDesc, null, null);
+            mv.visitCode();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitFieldInsn(Opcodes.GETFIELD, ownerClass, fieldName, "I");
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, COMPRESSED_POINTERS, "decode", "(I)J", false);
+            mv.visitInsn(Opcodes.LRETURN);
+            mv.visitMaxs(2, 1);
+            mv.visitEnd();
+            existingMethods.add(methodName);
+        }
+    }
+
+    /**
+     * 压缩指针的 setter 参数是 long 编码后存入 int 字段 不能编码的地址抛出 IllegalArgumentException
+     */
+    public void addNarrowSetter(ClassVisitor cv, String fieldName) {
+        String methodName = "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+        String methodDesc = "(J)V";
+        if (!existingMethods.contains(methodName + methodDesc)) {
+            MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC, methodName, methodDesc, null, null);
+            mv.visitCode();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitVarInsn(Opcodes.LLOAD, 1);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, COMPRESSED_POINTERS, "encode", "(J)I", false);
+            mv.visitFieldInsn(Opcodes.PUTFIELD, ownerClass, fieldName, "I");
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(3, 3);
+            mv.visitEnd();
+            existingMethods.add(methodName);
+        }
+    }
+
     public void toString(ClassVisitor cv, String name, String type) {
         MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC, name, "()Ljava/lang/String;", null, null);
         mv.visitCode();
@@ -58,7 +100,13 @@ public class SimpleMethodGenerator implements MethodGenerator {
         mv.visitInsn(Opcodes.ICONST_4);
         mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
 
-        loadAndBox(mv, 0, "pointer", "I");
+        // pointer 可能是压缩的 int 字段 通过 getPointer() 读取解码后的地址
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, ownerClass, "getPointer", "()J", false);
+        autoBox(mv, "J");
+        mv.visitInsn(Opcodes.AASTORE);
         loadAndBox(mv, 1, "size", "I");
         loadAndBox(mv, 2, "aligningSize", "I");
         loadAndBox(mv, 3, "isRoot", "Z");
@@ -83,6 +131,9 @@ public class SimpleMethodGenerator implements MethodGenerator {
             case "I":
                 mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
                 break;
+            case "J":
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false);
+                break;
             case "Z":
                 mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
                 break;
@@ -11,6 +11,10 @@ public interface MethodGenerator {
 
     void addSetter(ClassVisitor cv, String fieldName, String fieldType);
 
+    void addNarrowGetter(ClassVisitor cv, String fieldName);
+
+    void addNarrowSetter(ClassVisitor cv, String fieldName);
+
     void toString(ClassVisitor cv, String  name, String type);
 
 }
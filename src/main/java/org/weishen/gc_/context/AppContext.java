@@ -1,12 +1,31 @@
 package org.weishen.gc_.context;
 
+import org.weishen.gc_.asm.Flyweight;
+import org.weishen.gc_.gcm.CollectStrategy;
+import org.weishen.gc_.gcm.ThreeColourConcurrentGraph;
+import org.weishen.gc_.gcm.ThreeColourParallelGraph;
 import org.weishen.gc_.gcm.ThreeColourSerialUnSafeGraph;
 import org.weishen.gc_.gcm.ThreeColourNode;
+import org.weishen.gc_.heap.AbstractGenerationHeap;
+import org.weishen.gc_.heap.CompressedPointers;
+import org.weishen.gc_.heap.FreeListPolicy;
+import org.weishen.gc_.heap.HeapConfig;
 import org.weishen.gc_.heap.JVMArrayGenerationHeap;
+import org.weishen.gc_.heap.JVMChunkedGenerationHeap;
+import org.weishen.gc_.heap.JVMDirectGenerationHeap;
+import org.weishen.gc_.heap.JVMMappedGenerationHeap;
+import org.weishen.gc_.heap.JVMRegionGenerationHeap;
+import org.weishen.gc_.heap.ZeroingPolicy;
+import org.weishen.gc_.heap.inter.HeapReader;
 import org.weishen.gc_.heap.inter.SimulatedHeap;
 import org.weishen.gc_.obj_.inter.SimulatedObj;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Constructor;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Logger;
@@ -28,10 +47,105 @@ public final class AppContext {
 
     private static final Logger logger = Logger.getLogger(AppContext.class.getName());
 
+    /**
+     * 堆容量 (字节) 通过 -Dgc_.heap.capacity 指定 默认 Integer.MAX_VALUE
+     * 超过 Integer.MAX_VALUE 时使用多数组分块的堆
+     */
+    public static final String HEAP_CAPACITY_PROPERTY = "gc_.heap.capacity";
+
+    /**
+     * 堆的储存方式 通过 -Dgc_.heap.type 指定
+     * - array   : 单个 byte[] (容量不能超过 Integer.MAX_VALUE)
+     * - chunked : 多个 byte[] 分块
+     * - direct  : 堆外内存 (ByteBuffer.allocateDirect) 不占用宿主JVM的堆
+     * - mapped  : 映射文件 (-Dgc_.heap.file) 支持 checkpoint 之后的热重启
+     * - region  : 分区堆 (参考 G1) GC 之后按停顿目标疏散回收集
+     * 不指定时 根据容量在 array 和 chunked 之间选择
+     */
+    public static final String HEAP_TYPE_PROPERTY = "gc_.heap.type";
+
+    /**
+     * mapped 堆的文件路径
+     */
+    public static final String HEAP_FILE_PROPERTY = "gc_.heap.file";
+
+    /**
+     * 回收集的复用策略 see@FreeListPolicy 默认 FIRST_FIT
+     */
+    public static final String HEAP_FREE_LIST_PROPERTY = "gc_.heap.freeList";
+
+    /**
+     * 已释放内存的清零策略 see@ZeroingPolicy 默认 ZERO_ON_FREE
+     */
+    public static final String HEAP_ZEROING_PROPERTY = "gc_.heap.zeroing";
+
+    /**
+     * 压缩指针 see@CompressedPointers 默认关闭 开启后堆的容量不能超过 32GB
+     */
+    public static final String HEAP_COMPRESSED_POINTERS_PROPERTY = CompressedPointers.PROPERTY;
+
+    /**
+     * 巨型对象的阈值(字节) 超过的对象直接分配到老年代 默认半个 survivor
+     */
+    public static final String HEAP_HUMONGOUS_THRESHOLD_PROPERTY = "gc_.heap.humongousThreshold";
+
+    /**
+     * 是否开启无锁的 CAS bump-pointer 分配 see@HeapConfig#setLockFreeAllocation 默认 false
+     */
+    public static final String HEAP_LOCK_FREE_ALLOCATION_PROPERTY = "gc_.heap.lockFreeAllocation";
+
+    /**
+     * 标记之后的回收策略 see@CollectStrategy 默认 SWEEP
+     */
+    public static final String GC_COLLECT_PROPERTY = "gc_.gc.collect";
+
+    /**
+     * 并行标记的线程数 see@ThreeColourParallelGraph 默认 0 使用串行标记
+     */
+    public static final String GC_PARALLEL_MARK_PROPERTY = "gc_.gc.parallelMark";
+
+    /**
+     * 是否使用并发标记(SATB)的GC see@ThreeColourConcurrentGraph 默认 false
+     */
+    public static final String GC_CONCURRENT_PROPERTY = "gc_.gc.concurrent";
+
     // 静态内部类实现单例模式
     private static class SingletonHolder {
         // 在SingletonHolder被加载时，单例会被初始化
-        private static final AppContext INSTANCE = new AppContext(new JVMArrayGenerationHeap(Integer.MAX_VALUE));
+        private static final AppContext INSTANCE = new AppContext(createHeap());
+    }
+
+    private static SimulatedHeap createHeap() {
+        long capacity = Long.getLong(HEAP_CAPACITY_PROPERTY, Integer.MAX_VALUE);
+        String type = System.getProperty(HEAP_TYPE_PROPERTY, capacity > Integer.MAX_VALUE ? "chunked" : "array");
+        HeapConfig config = new HeapConfig();
+        config.setFreeListPolicy(FreeListPolicy.valueOf(System.getProperty(HEAP_FREE_LIST_PROPERTY, FreeListPolicy.FIRST_FIT.name())));
+        config.setZeroingPolicy(ZeroingPolicy.valueOf(System.getProperty(HEAP_ZEROING_PROPERTY, ZeroingPolicy.ZERO_ON_FREE.name())));
+        config.setHumongousThreshold(Integer.getInteger(HEAP_HUMONGOUS_THRESHOLD_PROPERTY, 0));
+        config.setLockFreeAllocation(Boolean.getBoolean(HEAP_LOCK_FREE_ALLOCATION_PROPERTY));
+        return switch (type) {
+            case "array" -> {
+                if (capacity > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("array heap capacity : " + capacity + " ,illegality.");
+                }
+                yield new JVMArrayGenerationHeap((int) capacity, config);
+            }
+            case "chunked" -> new JVMChunkedGenerationHeap(capacity, config);
+            case "direct" -> new JVMDirectGenerationHeap(capacity, config);
+            case "region" -> new JVMRegionGenerationHeap(capacity, config);
+            case "mapped" -> {
+                String file = System.getProperty(HEAP_FILE_PROPERTY);
+                if (file == null) {
+                    throw new IllegalArgumentException(HEAP_FILE_PROPERTY + " is required for mapped heap.");
+                }
+                try {
+                    yield new JVMMappedGenerationHeap(Path.of(file), capacity, config);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            default -> throw new IllegalArgumentException("heap type : " + type + " ,illegality.");
+        };
     }
 
     /**
@@ -41,22 +155,87 @@ public final class AppContext {
      */
     private final ReentrantReadWriteLock stwLockOfApp = new ReentrantReadWriteLock();
 
-    private final ThreeColourSerialUnSafeGraph gcGraph = new ThreeColourSerialUnSafeGraph();
+    private final ThreeColourSerialUnSafeGraph gcGraph = createGCGraph();
 
     // 模拟的堆，负责底层的内存分配和管理。
     private final SimulatedHeap simulatedHeap;
 
+    private static ThreeColourSerialUnSafeGraph createGCGraph() {
+        if (Boolean.getBoolean(GC_CONCURRENT_PROPERTY)) {
+            return new ThreeColourConcurrentGraph();
+        }
+        int parallelism = Integer.getInteger(GC_PARALLEL_MARK_PROPERTY, 0);
+        return parallelism > 0 ? new ThreeColourParallelGraph(parallelism) : new ThreeColourSerialUnSafeGraph();
+    }
+
     // 私有构造方法
     private AppContext(SimulatedHeap simulatedHeap) {
         this.simulatedHeap = simulatedHeap;
+        this.gcGraph.setCollectStrategy(CollectStrategy.valueOf(System.getProperty(GC_COLLECT_PROPERTY, CollectStrategy.SWEEP.name())));
     }
 
     public static void gc() {
+        Lock stwLock = getInstance().getAppWriterLock();
+        if (getGCGraph() instanceof ThreeColourConcurrentGraph graph) {
+            concurrentGc(graph, stwLock);
+            return;
+        }
+        stwLock.lock();
+        try {
+            // STW 下退役所有线程的tlab 未使用的tail归还回收集
+            if (getSimulatedHeap() instanceof AbstractGenerationHeap h) {
+                h.retireTlabs();
+            }
+            logger.info("GC Before : " + getSimulatedHeap().getHeapDetails());
+            getGCGraph().gc(stwLock);
+            // 分区堆 清扫之后疏散回收集中的存活对象
+            if (getSimulatedHeap() instanceof JVMRegionGenerationHeap h) {
+                h.evacuate(getGCGraph().getLiveObjs());
+            }
+            logger.info("GC Later : " + getSimulatedHeap().getHeapDetails());
+        } finally {
+            stwLock.unlock();
+        }
+    }
+
+    /**
+     * 并发的GC 只在初始标记 重新标记(和整理)时短暂持有写锁 see@ThreeColourConcurrentGraph
+     * 分区堆的疏散依然需要一次完整的暂停
+     */
+    private static void concurrentGc(ThreeColourConcurrentGraph graph, Lock stwLock) {
         logger.info("GC Before : " + getSimulatedHeap().getHeapDetails());
-        getGCGraph().gc();
+        graph.gc(stwLock);
+        if (getSimulatedHeap() instanceof JVMRegionGenerationHeap h) {
+            stwLock.lock();
+            try {
+                h.evacuate(graph.getLiveObjs());
+            } finally {
+                stwLock.unlock();
+            }
+        }
         logger.info("GC Later : " + getSimulatedHeap().getHeapDetails());
     }
 
+    /**
+     * 只回收年轻代的复制式 minor GC see@ThreeColourSerialUnSafeGraph#minorGc
+     */
+    public static void minorGc() {
+        if (!(getSimulatedHeap() instanceof AbstractGenerationHeap)) {
+            gc();
+            return;
+        }
+        Lock stwLock = getInstance().getAppWriterLock();
+        stwLock.lock();
+        try {
+            ((AbstractGenerationHeap) getSimulatedHeap()).retireTlabs();
+            logger.info("Minor GC Before : " + getSimulatedHeap().getHeapDetails());
+            getGCGraph().minorGc(stwLock);
+            logger.info("Minor GC Later : " + getSimulatedHeap().getHeapDetails());
+        } finally {
+            stwLock.unlock();
+        }
+    }
+
     // 公有静态方法，提供全局访问点
     public static AppContext getInstance() {
         return SingletonHolder.INSTANCE;
@@ -88,9 +267,115 @@ public final class AppContext {
         return new_(clazz, true, constructorArgs);
     }
 
+    /**
+     * 批量创建对象 (非 GCroot)
+     * 只查找一次构造函数 所有对象通过 memSetBatch 一次分配写入 再一次性注册到GC图中
+     *
+     * @param clazz           对象的类型
+     * @param constructorArgs 每个对象的构造参数 参数类型以第一个对象为准
+     * @return 创建的对象 与 constructorArgs 一一对应
+     */
+    public static <T> List<T> newBatch_(Class<T> clazz, List<Object[]> constructorArgs) {
+        List<T> instances = new ArrayList<>(constructorArgs.size());
+        if (constructorArgs.isEmpty()) return instances;
+        SimulatedHeap hp = getInstance().simulatedHeap;
+        Lock readLock = getInstance().getAppReadLock();
+        readLock.lock();
+        try {
+            Object[] first = constructorArgs.get(0);
+            Class<?>[] parameterTypes = new Class<?>[first.length];
+            for (int i = 0; i < first.length; i++) {
+                parameterTypes[i] = first[i].getClass();
+            }
+            Constructor<T> constructor = clazz.getConstructor(parameterTypes);
+            for (Object[] args : constructorArgs) {
+                instances.add(constructor.newInstance(args));
+            }
+            try {
+                hp.memSetBatch(instances.toArray(), AbstractGenerationHeap.EDEN_);
+            } catch (OutOfMemoryError e) {
+                collectForAllocation(e);
+                hp.memSetBatch(instances.toArray(), AbstractGenerationHeap.EDEN_);
+            }
+            List<ThreeColourNode> nodes = new ArrayList<>(instances.size());
+            for (T instance : instances) {
+                if (instance instanceof SimulatedObj so) {
+                    so.setIsRoot(false);
+                    nodes.add(new ThreeColourNode(clazz.getName(), so));
+                }
+            }
+            getGCGraph().registerAll(nodes);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        } finally {
+            readLock.unlock();
+        }
+        return instances;
+    }
+
+    /**
+     * 从模拟堆中读取对象的字段 不经过 Java 实例 see@Flyweight
+     * 持有读锁 读取期间对象不会被GC移动
+     */
+    public static Object get_(Object obj, String field) {
+        Lock readLock = getInstance().getAppReadLock();
+        readLock.lock();
+        try {
+            return Flyweight.of(obj.getClass()).load((HeapReader) getInstance().simulatedHeap, (SimulatedObj) obj, field);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * 在对象原来的块内修改一个字段 不重新 memSet see@Flyweight
+     * 变长字段超过 aligningSize 时对象被重新分配 pointer 随之更新
+     * 重新分配会拷贝对象头 持有节点的监视器 避免与并发标记的颜色转换交错
+     * 年轻代的对象可能被重新分配为老年代的巨型对象 这时由GC图决定是否加入记忆集
+     */
+    public static void set_(Object obj, String field, Object value) {
+        Lock readLock = getInstance().getAppReadLock();
+        readLock.lock();
+        ThreeColourNode node = getGCGraph().getNode(obj);
+        try {
+            long pointer = ((SimulatedObj) obj).getPointer();
+            synchronized (node != null ? node : obj) {
+                Flyweight.of(obj.getClass()).store(getInstance().simulatedHeap, (SimulatedObj) obj, field, value);
+            }
+            if (node != null && pointer != ((SimulatedObj) obj).getPointer()) getGCGraph().remember(node);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * eden 用尽时的GC 之后由调用方重试一次分配 仍然失败才抛出OOM
+     * 分代堆的 eden 只有 minor GC 才会重置 分区堆释放的空间不会复用 只有疏散才能归还 eden 的分区 (minorGc 退化为完整的GC)
+     * 调用方持有读锁 GC 需要写锁 读锁先释放 GC 之后重新获取
+     * 读锁被重入持有时无法释放 直接抛出原来的OOM
+     */
+    private static void collectForAllocation(OutOfMemoryError e) {
+        ReentrantReadWriteLock lock = getInstance().stwLockOfApp;
+        if (lock.getReadHoldCount() != 1) throw e;
+        logger.info("Allocation failed in eden, collecting : " + e.getMessage());
+        lock.readLock().unlock();
+        try {
+            minorGc();
+        } finally {
+            lock.readLock().lock();
+        }
+    }
+
     private static <T> T new_(Class<T> clazz, boolean isRoot, Object... constructorArgs) {
         T instance;
         SimulatedHeap hp = getInstance().simulatedHeap;
+        // 分配持有读锁 GC(写锁)时所有分配都已暂停 tlab 才能被安全的退役
+        Lock readLock = getInstance().getAppReadLock();
+        readLock.lock();
         try {
             // 将参数类型转换为 Class 对象数组
             Class<?>[] parameterTypes = new Class[constructorArgs.length];
@@ -101,8 +386,11 @@ public final class AppContext {
             Constructor<T> constructor = clazz.getConstructor(parameterTypes);
             //  创建实例
             instance = constructor.newInstance(constructorArgs);
-            if (hp instanceof JVMArrayGenerationHeap h) {
-                h.memSet(instance, JVMArrayGenerationHeap.EDEN_);
+            try {
+                hp.memSet(instance, AbstractGenerationHeap.EDEN_);
+            } catch (OutOfMemoryError e) {
+                collectForAllocation(e);
+                hp.memSet(instance, AbstractGenerationHeap.EDEN_);
             }
             if (instance instanceof SimulatedObj so) {
                 so.setIsRoot(isRoot);
@@ -111,6 +399,8 @@ public final class AppContext {
 
         } catch (Throwable e) {
             throw new RuntimeException(e);
+        } finally {
+            readLock.unlock();
         }
         return instance;
     }
@@ -1,19 +1,37 @@
 package org.weishen.gc_.ds;
 
+import java.util.Arrays;
 import java.util.Random;
+import java.util.function.ToLongFunction;
 
+/**
+ * 双向跳表 key 有序
+ * <p>
+ * 可选的跨度增强: 构造时传入 weigher (例如空闲块的大小)
+ * 每个节点在每一层额外记录 spanMax[i] = [node, node.forward[i]) 这段跨度内最大的 weight
+ * 查询第一个 weight >= x 的节点时 可以从高层向下 整段跳过不可能满足的跨度 O(log n)
+ * <p>
+ * level 2: H ------------------------> C
+ * level 1: H ---------> B ------------> C
+ * level 0: H --> A --> B --> b2 --> C
+ * H.spanMax[2] = max(A, B, b2)  B.spanMax[1] = max(B, b2)
+ * <p>
+ * insert / delete 时只需要自底向上重算经过的前驱节点 每一层平均只需要看 1/P 个下层节点
+ */
 public class DoublySkipList<T> {
 
     public static class SkipListNode<T> {
-        int key;
+        long key;
         T value;
         //后索引块
         SkipListNode<T>[] forward;
         //前索引块
         SkipListNode<T>[] backward;
+        //每一层跨度内最大的 weight 没有 weigher 时为 null
+        long[] spanMax;
 
         @SuppressWarnings("unchecked")
-        public SkipListNode(int key, T value, int level) {
+        public SkipListNode(long key, T value, int level) {
             this.key = key;
             this.value = value;
             this.forward = new SkipListNode[level + 1];
@@ -28,7 +46,7 @@ public class DoublySkipList<T> {
             return backward[0];
         }
 
-        public int getKey() {
+        public long getKey() {
             return key;
         }
 
@@ -43,15 +61,129 @@ public class DoublySkipList<T> {
     private final SkipListNode<T> header;
     private int level;
     private final Random random;
+    private final ToLongFunction<T> weigher;
+
+    /**
+     * 顺序追加时每一层的最后一个节点 see@append
+     */
+    @SuppressWarnings("unchecked")
+    private final SkipListNode<T>[] tail = new SkipListNode[MAX_LEVEL + 1];
+
+    /**
+     * 顺序追加时所有节点中最大的 weight
+     */
+    private long appendedMax = Long.MIN_VALUE;
 
     public SkipListNode<T> getHeader() {
         return header;
     }
 
     public DoublySkipList() {
-        this.header = new SkipListNode<>(Integer.MIN_VALUE, null, MAX_LEVEL);
+        this(null);
+    }
+
+    /**
+     * @param weigher 节点的 weight 不为空时维护每一层的 spanMax 支持 firstFit
+     */
+    public DoublySkipList(ToLongFunction<T> weigher) {
+        this.header = new SkipListNode<>(Long.MIN_VALUE, null, MAX_LEVEL);
         this.level = 0;
         this.random = new Random();
+        this.weigher = weigher;
+        if (weigher != null) {
+            header.spanMax = new long[MAX_LEVEL + 1];
+            Arrays.fill(header.spanMax, Long.MIN_VALUE);
+        }
+        Arrays.fill(tail, header);
+    }
+
+    /**
+     * 清空跳表
+     */
+    public void clear() {
+        Arrays.fill(header.forward, null);
+        Arrays.fill(header.backward, null);
+        if (header.spanMax != null) {
+            Arrays.fill(header.spanMax, Long.MIN_VALUE);
+        }
+        level = 0;
+        Arrays.fill(tail, header);
+        appendedMax = Long.MIN_VALUE;
+    }
+
+    /**
+     * 在末尾追加一个节点 key 必须大于当前所有的 key
+     * 只能在 clear() 之后连续调用 (中间不能有 insert / delete) 用于 O(n) 按顺序重建整个跳表
+     * <p>
+     * 每一层只需要记住最后一个节点(tail) 新节点接在它的层数以内的 tail 之后
+     * 更高层的 tail 的跨度把新节点包含进来 spanMax 直接取 max 不需要回头重算
+     */
+    public SkipListNode<T> append(long key, T value) {
+        assert tail[0] == header || tail[0].key < key;
+        int lvl = randomLevel();
+        if (lvl > level) {
+            for (int i = level + 1; i <= lvl; i++) {
+                tail[i] = header;
+                if (weigher != null) header.spanMax[i] = appendedMax;
+            }
+            level = lvl;
+        }
+        SkipListNode<T> newNode = new SkipListNode<>(key, value, lvl);
+        for (int i = 0; i <= lvl; i++) {
+            tail[i].forward[i] = newNode;
+            newNode.backward[i] = tail[i];
+            tail[i] = newNode;
+        }
+        if (weigher != null) {
+            long w = weight(newNode);
+            newNode.spanMax = new long[lvl + 1];
+            Arrays.fill(newNode.spanMax, w);
+            for (int i = lvl + 1; i <= level; i++) {
+                if (tail[i].spanMax[i] < w) tail[i].spanMax[i] = w;
+            }
+            appendedMax = Math.max(appendedMax, w);
+        }
+        return newNode;
+    }
+
+    /**
+     * key 最小的 weight >= weight 的节点 没有返回 null
+     * 需要构造时传入 weigher
+     * <p>
+     * 不变式: current 之前(包含 current)的节点都不满足
+     * 某一层 current 的整段跨度都不满足时 直接跳到下一个同层节点 否则下降一层
+     */
+    public SkipListNode<T> firstFit(long weight) {
+        assert weigher != null;
+        SkipListNode<T> current = header;
+        for (int i = level; i >= 0; i--) {
+            while (current.spanMax[i] < weight) {
+                if (current.forward[i] == null) return null;
+                current = current.forward[i];
+            }
+        }
+        // 第 0 层的跨度只有 current 本身
+        return current == header ? null : current;
+    }
+
+    private long weight(SkipListNode<T> node) {
+        return node == header ? Long.MIN_VALUE : weigher.applyAsLong(node.value);
+    }
+
+    /**
+     * 用第 i - 1 层的跨度重算 node 在第 i 层的跨度
+     */
+    private void updateSpan(SkipListNode<T> node, int i) {
+        if (i == 0) {
+            node.spanMax[0] = weight(node);
+            return;
+        }
+        long max = node.spanMax[i - 1];
+        SkipListNode<T> end = node.forward[i];
+        for (SkipListNode<T> n = node.forward[i - 1]; n != end; n = n.forward[i - 1]) {
+            max = Math.max(max, n.spanMax[i - 1]);
+        }
+        node.spanMax[i] = max;
     }
 
     private int randomLevel() {
@@ -62,7 +194,7 @@ public class DoublySkipList<T> {
         return lvl;
     }
 
-    public SkipListNode<T> search(int key) {
+    public SkipListNode<T> search(long key) {
         SkipListNode<T> current = header;
         for (int i = level; i >= 0; i--) {
             while (current.forward[i] != null && current.forward[i].key < key) {
@@ -74,7 +206,7 @@ public class DoublySkipList<T> {
     }
 
     @SuppressWarnings("unchecked")
-    public SkipListNode insert(int key, T value) {
+    public SkipListNode<T> insert(long key, T value) {
         SkipListNode<T>[] update = new SkipListNode[MAX_LEVEL + 1];
         SkipListNode<T> current = header;
 
@@ -105,12 +237,25 @@ public class DoublySkipList<T> {
                 }
                 newNode.backward[i] = update[i];
             }
+            if (weigher != null) {
+                newNode.spanMax = new long[lvl + 1];
+                long w = weight(newNode);
+                // 自底向上 新节点所在的层重算 更高的层只会变大
+                for (int i = 0; i <= level; i++) {
+                    if (i <= lvl) {
+                        updateSpan(newNode, i);
+                        updateSpan(update[i], i);
+                    } else if (update[i].spanMax[i] < w) {
+                        update[i].spanMax[i] = w;
+                    }
+                }
+            }
         }
         return newNode;
     }
 
     @SuppressWarnings("unchecked")
-    public void delete(int key) {
+    public void delete(long key) {
         SkipListNode<T>[] update = new SkipListNode[MAX_LEVEL + 1];
         SkipListNode<T> current = header;
 
@@ -133,6 +278,12 @@ public class DoublySkipList<T> {
             while (level > 0 && header.forward[level] == null) {
                 level--;
             }
+            if (weigher != null) {
+                // 前驱的跨度吸收了被删除节点之后的部分 第 0 层只有前驱自己 不变
+                for (int i = 1; i <= level; i++) {
+                    updateSpan(update[i], i);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,15 @@
+package org.weishen.gc_.gcm;
+
+/**
+ * 标记之后的回收策略
+ * <p>
+ * - SWEEP        : 只清扫 垃圾对象的空间归还回收集 (原来的行为)
+ * - MARK_COMPACT : 清扫之后对老年代做 LISP2 滑动整理 see@AbstractGenerationHeap#compact
+ * 存活对象滑到老年代底部 回收集被清空 分配回到纯 bump-pointer
+ */
+public enum CollectStrategy {
+
+    SWEEP,
+
+    MARK_COMPACT
+}
@@ -0,0 +1,274 @@
+package org.weishen.gc_.gcm;
+
+import org.weishen.gc_.context.AppContext;
+import org.weishen.gc_.gcm.inter.ReferenceGC;
+import org.weishen.gc_.heap.AbstractGenerationHeap;
+import org.weishen.gc_.obj_.inter.SimulatedObj;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * ThreeColourConcurrentGraph 大部分并发(mostly-concurrent)的三色标记GC 使用 SATB(snapshot-at-the-beginning)写屏障
+ * <p>
+ * 一次回收的阶段:
+ * 1: initial mark  (STW)   : 退役 tlab 把根染灰 暂停只与根的数量有关
+ * 2: concurrent mark       : 不持有 STW 锁 从灰色节点追踪 mutator 同时 register disconnect new_
+ * 3: remark        (STW)   : 处理屏障在并发标记期间染灰的节点 暂停只与这期间断开的子图有关
+ * 4: concurrent sweep      : 不持有 STW 锁 白色的节点被回收
+ * 5: compact       (STW)   : 只有 MARK_COMPACT 需要 整理老年代
+ * <p>
+ * SATB: 标记开始时(initial mark)可达的对象在这次回收中都是存活的
+ * - 断开引用(disconnect disconnectAndRecycle)之前 屏障把原来引用的白色节点染灰并交给标记线程 快照中的路径不会因为断开而丢失
+ * - 标记和清扫期间新注册的节点直接存活 (标记期间染黑 不需要追踪) 清扫跳过它们 回收结束时恢复为白色
+ * - 新建立的引用(register)不需要屏障: 目标要么是新节点 要么在快照中可达
+ * <p>
+ * 同步:
+ * - 节点的引用集合和颜色转换都在节点的监视器内 标记线程和屏障复制引用集合 mutator 修改引用集合
+ * 同一时间最多持有一个节点的监视器
+ * 对象被重新分配(AppContext.set_)时同样持有节点的监视器 对象头的颜色不会在拷贝时丢失
+ * - 根的列表 回收阶段的切换 写屏障和断开引用在图的监视器内 屏障不会在 remark 之后入队
+ * - 同一时间只有一次回收 回收期间的 minor GC 被跳过
+ * <p>
+ * 和串行的GC一样 mutator 只通过图得到对象 快照时已经不可达的对象不会再被引用
+ */
+public class ThreeColourConcurrentGraph extends ThreeColourSerialUnSafeGraph {
+    private static final Logger logger = Logger.getLogger(ThreeColourConcurrentGraph.class.getName());
+
+    private enum Phase {
+        IDLE,
+        MARKING,
+        SWEEPING
+    }
+
+    private volatile Phase phase = Phase.IDLE;
+
+    private final ReentrantLock cycleLock = new ReentrantLock();
+
+    /**
+     * 屏障染灰的节点 等待标记线程追踪
+     */
+    private final Queue<ThreeColourNode> satbQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 本次回收开始之后注册的节点 清扫时跳过
+     */
+    private final Set<ThreeColourNode> allocated = ConcurrentHashMap.newKeySet();
+
+    private volatile long initialMarkNanos;
+
+    private volatile long remarkNanos;
+
+    @Override
+    public void gc(Lock stwLock) {
+        cycleLock.lock();
+        try {
+            ArrayDeque<ThreeColourNode> stack = new ArrayDeque<>();
+            initialMark(stwLock, stack);
+            logger.info("Starting concurrent mark phase.");
+            drain(stack);
+            remark(stwLock, stack);
+            sweep();
+            if (getCollectStrategy() == CollectStrategy.MARK_COMPACT) {
+                stwLock.lock();
+                try {
+                    compact();
+                } finally {
+                    stwLock.unlock();
+                }
+            }
+            synchronized (this) {
+                for (ThreeColourNode node : allocated) {
+                    node.setColor(ThreeColourNode.Color.WHITE);
+                }
+                allocated.clear();
+                phase = Phase.IDLE;
+            }
+            logger.info("Concurrent gc completed. initial mark: " + initialMarkNanos / 1000 + "us, remark: " + remarkNanos / 1000 + "us");
+        } finally {
+            synchronized (this) {
+                phase = Phase.IDLE;
+                satbQueue.clear();
+            }
+            cycleLock.unlock();
+        }
+    }
+
+    private void initialMark(Lock stwLock, ArrayDeque<ThreeColourNode> stack) {
+        long start = System.nanoTime();
+        stwLock.lock();
+        try {
+            if (AppContext.getSimulatedHeap() instanceof AbstractGenerationHeap h) {
+                h.retireTlabs();
+            }
+            synchronized (this) {
+                phase = Phase.MARKING;
+                for (ThreeColourNode root : getRootObjs()) {
+                    if (shade(root)) stack.push(root);
+                }
+            }
+        } finally {
+            stwLock.unlock();
+            initialMarkNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * 屏障在并发标记的最后时刻染灰的节点 在 STW 下追踪完
+     * mutator 调用 disconnect 不经过 STW 锁 切换到 SWEEPING 之前屏障依然可能入队
+     * 屏障和切换都在图的监视器内 切换之后队列不会再增长 所以切换之后再追踪一次
+     */
+    private void remark(Lock stwLock, ArrayDeque<ThreeColourNode> stack) {
+        long start = System.nanoTime();
+        stwLock.lock();
+        try {
+            drain(stack);
+            synchronized (this) {
+                phase = Phase.SWEEPING;
+            }
+            drain(stack);
+        } finally {
+            stwLock.unlock();
+            remarkNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * 追踪直到标记栈和屏障队列都为空
+     */
+    private void drain(ArrayDeque<ThreeColourNode> stack) {
+        while (true) {
+            ThreeColourNode node = stack.poll();
+            if (node == null) node = satbQueue.poll();
+            if (node == null) return;
+            ReferenceGC[] references;
+            synchronized (node) {
+                references = node.getReference().toArray(new ReferenceGC[0]);
+            }
+            for (ReferenceGC ref : references) {
+                if (ref instanceof ThreeColourNode child && shade(child)) {
+                    stack.push(child);
+                }
+            }
+            synchronized (node) {
+                node.casColor(ThreeColourNode.Color.GREY, ThreeColourNode.Color.BLACK);
+            }
+        }
+    }
+
+    /**
+     * WHITE -> GREY 成功的一方负责追踪这个节点
+     */
+    private static boolean shade(ThreeColourNode node) {
+        synchronized (node) {
+            return node.casColor(ThreeColourNode.Color.WHITE, ThreeColourNode.Color.GREY);
+        }
+    }
+
+    /**
+     * SATB 写屏障 引用被断开之前 原来的白色目标染灰并交给标记线程
+     * 调用者持有图的监视器 阶段的检查 染灰 入队和 remark 切换阶段互斥 断开也在同一个监视器内完成
+     * 染灰时不持有 node 的监视器 (同一时间最多持有一个节点的监视器)
+     * 之后才加入的引用不需要染灰: 目标要么是新节点 要么在快照中通过其他路径可达
+     */
+    private void preWriteBarrier(ThreeColourNode node) {
+        if (phase != Phase.MARKING) return;
+        ReferenceGC[] references;
+        synchronized (node) {
+            references = node.getReference().toArray(new ReferenceGC[0]);
+        }
+        for (ReferenceGC ref : references) {
+            if (ref instanceof ThreeColourNode target && shade(target)) {
+                satbQueue.add(target);
+            }
+        }
+    }
+
+    /**
+     * 回收期间注册的节点直接存活 标记期间染黑
+     */
+    private void allocate(ThreeColourNode node) {
+        if (phase == Phase.IDLE) return;
+        allocated.add(node);
+        if (phase == Phase.MARKING) node.setColor(ThreeColourNode.Color.BLACK);
+    }
+
+    @Override
+    protected boolean isSweepable(ThreeColourNode node) {
+        return !allocated.contains(node);
+    }
+
+    @Override
+    public synchronized void register(ThreeColourNode obj) {
+        allocate(obj);
+        super.register(obj);
+    }
+
+    @Override
+    public synchronized void registerAll(Collection<ThreeColourNode> objs) {
+        for (ThreeColourNode obj : objs) {
+            allocate(obj);
+        }
+        super.registerAll(objs);
+    }
+
+    @Override
+    public void register(Object current, Object... next) {
+        ThreeColourNode node = getNode(current);
+        if (node == null) return;
+        synchronized (node) {
+            super.register(current, next);
+        }
+    }
+
+    @Override
+    public synchronized void disconnect(Object root) {
+        ThreeColourNode node = getNode(root);
+        if (node == null || !((SimulatedObj) root).getIsRoot()) return;
+        preWriteBarrier(node);
+        synchronized (node) {
+            super.disconnect(root);
+        }
+    }
+
+    @Override
+    public synchronized void disconnectAndRecycle(Object root) {
+        ThreeColourNode node = getNode(root);
+        if (node == null || !((SimulatedObj) root).getIsRoot()) return;
+        preWriteBarrier(node);
+        synchronized (node) {
+            super.disconnectAndRecycle(root);
+        }
+    }
+
+    /**
+     * 并发回收期间不做 minor GC (复制会移动并发标记中的对象) 直接跳过
+     */
+    @Override
+    public void minorGc(Lock stwLock) {
+        if (!cycleLock.tryLock()) {
+            logger.info("Concurrent gc in progress, minor gc skipped.");
+            return;
+        }
+        try {
+            super.minorGc(stwLock);
+        } finally {
+            cycleLock.unlock();
+        }
+    }
+
+    public long getInitialMarkNanos() {
+        return initialMarkNanos;
+    }
+
+    public long getRemarkNanos() {
+        return remarkNanos;
+    }
+}
@@ -4,6 +4,8 @@ import org.weishen.gc_.context.AppContext;
 import org.weishen.gc_.gcm.inter.Clear;
 import org.weishen.gc_.gcm.inter.ReferenceGC;
 import org.weishen.gc_.gcm.inter.Mark;
+import org.weishen.gc_.heap.ObjectHeader;
+import org.weishen.gc_.heap.inter.HeapMemory;
 import org.weishen.gc_.obj_.inter.SimulatedObj;
 
 import java.util.logging.Logger;
@@ -26,11 +28,13 @@ import java.util.*;
  * - sweep(): 执行清扫阶段，移除所有未被标记的节点，并重置已处理节点的状态。
  * - register(): 注册新的节点到GC图中。
  * - disconnect(): 断开选定根节点的引用，通常在该对象不再需要时调用。
+ * <p>
+ * 颜色不保存在节点中 而是对象头 mark word 的颜色位 (see@ObjectHeader) 标记直接读写模拟堆
+ * 对象已经被释放(getSource() == null)的节点视为白色
  */
 public class ThreeColourNode implements Clear, Mark, ReferenceGC {
     private static final Logger logger = Logger.getLogger(ThreeColourNode.class.getName());
     private final Set<ReferenceGC> references = new HashSet<>();
-    private Color color = Color.WHITE;  // 默认所有节点初始为白色
     private final String id; // 节点标识符
     private SimulatedObj simulatedObj;
 
@@ -45,27 +49,43 @@ public class ThreeColourNode implements Clear, Mark, ReferenceGC {
         return id;
     }
 
-    public void setColor(Color color) {
-        this.color = color;
+    /**
+     * 读-改-写对象头 在节点的监视器内 与并发GC的颜色转换和对象的重新分配互斥 see@ThreeColourConcurrentGraph
+     */
+    public synchronized void setColor(Color color) {
+        SimulatedObj so = simulatedObj;
+        if (so != null) {
+            ObjectHeader.setColour((HeapMemory) AppContext.getSimulatedHeap(), so.getPointer(), color.ordinal());
+        }
     }
 
     public Color getColor() {
-        return color;
+        SimulatedObj so = simulatedObj;
+        if (so == null) return Color.WHITE;
+        return COLORS[ObjectHeader.getColour((HeapMemory) AppContext.getSimulatedHeap(), so.getPointer())];
+    }
+
+    /**
+     * 原子的颜色转换 (CAS 对象头的 mark word) 对象已经被释放时返回 false
+     */
+    public boolean casColor(Color expected, Color color) {
+        SimulatedObj so = simulatedObj;
+        return so != null && ObjectHeader.compareAndSetColour((HeapMemory) AppContext.getSimulatedHeap(), so.getPointer(), expected.ordinal(), color.ordinal());
     }
 
     @Override
     public void mark(Queue<Mark> workQueue) {
         //每个节点都只负责自己的向量
-        logger.info("Marking node: " + id + " | Current color: " + color);
-        if (this.color == Color.WHITE) {
-            this.color = Color.GREY;  // 标记为灰色，表示待处理
+        logger.info("Marking node: " + id + " | Current color: " + getColor());
+        if (getColor() == Color.WHITE) {
+            setColor(Color.GREY);  // 标记为灰色，表示待处理
             for (ReferenceGC ref : references) {
-                if (ref instanceof ThreeColourNode node && node.color == Color.WHITE) {
+                if (ref instanceof ThreeColourNode node && node.getColor() == Color.WHITE) {
                     workQueue.add(node);  // 只有白色节点需要被加入队列
                     node.mark(workQueue); // 递归标记引用的节点
                 }
             }
-            this.color = Color.BLACK; // 处理完所有引用后，标记为黑色
+            setColor(Color.BLACK); // 处理完所有引用后，标记为黑色
             logger.info("Node marked BLACK: " + id);
         }
     }
@@ -102,7 +122,7 @@ public class ThreeColourNode implements Clear, Mark, ReferenceGC {
         while (iterator.hasNext()) {
             ReferenceGC node = iterator.next();
             if (node instanceof ThreeColourNode threeNode) {
-                if (threeNode.color == Color.WHITE) {
+                if (threeNode.getColor() == Color.WHITE) {
                     threeNode.clear(); // 清理未标记（白色）的节点
                 }
             }
@@ -112,6 +132,28 @@ public class ThreeColourNode implements Clear, Mark, ReferenceGC {
     }
 
 
+    /**
+     * 同 clear() 但不直接释放内存 需要释放的对象交给 dead 由调用方批量释放 see@SimulatedHeap#freeAll
+     * 使用显式的栈 很长的白色引用链不会导致栈溢出 (清扫的顺序取决于 nodesMap 的遍历顺序)
+     */
+    public void clear(List<SimulatedObj> dead) {
+        Deque<ThreeColourNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            ThreeColourNode current = stack.pop();
+            for (ReferenceGC node : current.references) {
+                if (node instanceof ThreeColourNode threeNode && threeNode.getColor() == Color.WHITE) {
+                    stack.push(threeNode);
+                }
+            }
+            current.references.clear();
+            if (current.simulatedObj != null) {
+                dead.add(current.simulatedObj);
+                current.setSimulatedObj(null);
+            }
+        }
+    }
+
     public void freeMemory() {
         try {
             SimulatedObj source = getSource();
@@ -128,7 +170,12 @@ public class ThreeColourNode implements Clear, Mark, ReferenceGC {
     }
 
 
+    /**
+     * ordinal 与对象头中的颜色位一致 (ObjectHeader.WHITE GREY BLACK)
+     */
     public enum Color {
         WHITE, GREY, BLACK
     }
+
+    private static final Color[] COLORS = Color.values();
 }
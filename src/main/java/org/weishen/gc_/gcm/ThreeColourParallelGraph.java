@@ -0,0 +1,128 @@
+package org.weishen.gc_.gcm;
+
+import org.weishen.gc_.gcm.inter.ReferenceGC;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+/**
+ * ThreeColourParallelGraph 并行标记的三色标记GC 清扫 整理 minor GC 与串行的实现相同
+ * <p>
+ * 标记在 STW 下由 ForkJoinPool 的多个线程完成:
+ * 1: 根被均分成 parallelism * ROOT_SPLIT 个任务 每个任务用自己的栈(深度优先)追踪
+ * 2: 栈中的灰色节点超过 SPLIT_THRESHOLD 并且本线程的队列中没有多余的任务时 把一半拆成新的任务 fork 到本线程的队列
+ * 空闲的线程从其他线程的队列尾部窃取(work stealing) 大的子图会被自动摊开
+ * 3: 颜色的转换 WHITE -> GREY 是对象头 mark word 的 CAS (see@ThreeColourNode#casColor)
+ * 只有成功染灰的线程会把节点压栈 同一个节点不会被追踪两次
+ * 4: 节点的引用全部处理完之后染黑
+ * <p>
+ * 标记期间图不会被修改(应用线程被 STW 写锁挡住) 引用集合只读 不需要额外的同步
+ * parallelism 为 1 时等同于串行的标记 只是不再递归
+ */
+public class ThreeColourParallelGraph extends ThreeColourSerialUnSafeGraph {
+    private static final Logger logger = Logger.getLogger(ThreeColourParallelGraph.class.getName());
+
+    /**
+     * 每个线程平均分到的根任务数
+     */
+    private static final int ROOT_SPLIT = 4;
+
+    /**
+     * 栈中的灰色节点超过此数量时考虑拆分
+     */
+    private static final int SPLIT_THRESHOLD = 64;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param parallelism 标记线程数
+     */
+    public ThreeColourParallelGraph(int parallelism) {
+        assert parallelism > 0;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public void mark() {
+        logger.info("Starting parallel mark phase. parallelism: " + pool.getParallelism());
+        List<ThreeColourNode> grey = new ArrayList<>();
+        for (ThreeColourNode root : getRootObjs()) {
+            if (root.casColor(ThreeColourNode.Color.WHITE, ThreeColourNode.Color.GREY)) {
+                grey.add(root);
+            }
+        }
+        int tasks = Math.max(1, Math.min(grey.size(), pool.getParallelism() * ROOT_SPLIT));
+        List<MarkTask> partitions = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            int from = grey.size() * i / tasks;
+            int to = grey.size() * (i + 1) / tasks;
+            partitions.add(new MarkTask(new ArrayDeque<>(grey.subList(from, to))));
+        }
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                invokeAll(partitions);
+            }
+        });
+        logger.info("Parallel mark phase completed. stolen tasks: " + pool.getStealCount());
+    }
+
+    /**
+     * 一组灰色节点的追踪任务 栈中的节点已经被本任务染灰
+     */
+    private static final class MarkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayDeque<ThreeColourNode> stack;
+
+        private MarkTask(ArrayDeque<ThreeColourNode> stack) {
+            this.stack = stack;
+        }
+
+        @Override
+        protected void compute() {
+            List<MarkTask> forked = new ArrayList<>();
+            while (!stack.isEmpty()) {
+                ThreeColourNode node = stack.pop();
+                for (ReferenceGC ref : node.getReference()) {
+                    if (ref instanceof ThreeColourNode child
+                            && child.casColor(ThreeColourNode.Color.WHITE, ThreeColourNode.Color.GREY)) {
+                        stack.push(child);
+                    }
+                }
+                node.casColor(ThreeColourNode.Color.GREY, ThreeColourNode.Color.BLACK);
+                if (stack.size() > SPLIT_THRESHOLD && getSurplusQueuedTaskCount() == 0) {
+                    forked.add(split());
+                }
+            }
+            for (MarkTask task : forked) {
+                task.join();
+            }
+        }
+
+        /**
+         * 栈底的一半(较早发现 离根更近)交给新的任务 fork 到本线程的队列 等待被窃取
+         */
+        private MarkTask split() {
+            int half = stack.size() / 2;
+            ArrayDeque<ThreeColourNode> part = new ArrayDeque<>(half);
+            for (int i = 0; i < half; i++) {
+                part.push(stack.pollLast());
+            }
+            MarkTask task = new MarkTask(part);
+            task.fork();
+            return task;
+        }
+    }
+}
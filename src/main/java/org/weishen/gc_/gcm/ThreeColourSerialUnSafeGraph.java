@@ -1,10 +1,15 @@
 package org.weishen.gc_.gcm;
 
+import org.weishen.gc_.context.AppContext;
 import org.weishen.gc_.gcm.inter.Mark;
+import org.weishen.gc_.gcm.inter.ReferenceGC;
 import org.weishen.gc_.gcm.inter.SimulatedGC;
+import org.weishen.gc_.heap.AbstractGenerationHeap;
 import org.weishen.gc_.obj_.inter.SimulatedObj;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.logging.Logger;
 
@@ -23,6 +28,8 @@ import java.util.logging.Logger;
  * - mark(): 实现三色标记过程，标记所有从根节点可达的节点。
  * 使用工作队列（workList）来避免递归，并确保所有从根节点可达的节点都被正确标记。
  * - sweep(): 清扫阶段，移除所有未被标记（即颜色为白色）的节点，并重置剩余节点的颜色为白色，为下一次垃圾收集循环做准备。
+ * - compact(): 整理阶段，collectStrategy 为 MARK_COMPACT 时在清扫之后滑动整理老年代。
+ * - minorGc(): 复制式(Cheney)的年轻代回收，存活的年轻代对象拷贝到 to-survivor，eden 和 from-survivor 整体重置。
  * - register(ThreeColourNode obj): 将新节点注册到图中。如果节点是根节点，则同时添加到根列表中。
  * - getRootObjs(): 返回图中所有根节点的列表。
  * - safeTime(): 返回垃圾收集算法的安全执行时间，目前返回0，表示无特定延迟。
@@ -30,8 +37,20 @@ import java.util.logging.Logger;
 public class ThreeColourSerialUnSafeGraph implements SimulatedGC<ThreeColourNode> {
     private static final Logger logger = Logger.getLogger(ThreeColourSerialUnSafeGraph.class.getName());
     private final List<ThreeColourNode> roots = new ArrayList<>();
-    private final Map<SimulatedObj, ThreeColourNode> nodesMap = new HashMap<>();
-    private final List<ThreeColourNode> shortActingRoots = new ArrayList<>();
+    /**
+     * 并发的GC(see@ThreeColourConcurrentGraph)清扫时 mutator 依然在注册新的节点 所以使用并发的容器
+     */
+    private final Map<SimulatedObj, ThreeColourNode> nodesMap = new ConcurrentHashMap<>();
+    private final Queue<ThreeColourNode> shortActingRoots = new ConcurrentLinkedQueue<>();
+    /**
+     * 对象在年轻代的节点 minor GC 只遍历它们 不需要遍历整个 nodesMap
+     */
+    private final Set<ThreeColourNode> youngNodes = ConcurrentHashMap.newKeySet();
+    /**
+     * 记忆集(remembered set) 引用了年轻代节点的老年代节点 minor GC 从根和它们开始追踪
+     */
+    private final Set<ThreeColourNode> rememberedSet = ConcurrentHashMap.newKeySet();
+    private CollectStrategy collectStrategy = CollectStrategy.SWEEP;
 
     @Override
     public void gc(Lock stwLock) {
@@ -62,6 +81,20 @@ public class ThreeColourSerialUnSafeGraph implements SimulatedGC<ThreeColourNode
     @Override
     public void collect() {
         sweep();
+        if (collectStrategy == CollectStrategy.MARK_COMPACT) {
+            compact();
+        }
+    }
+
+    /**
+     * 清扫之后 nodesMap 中只剩下存活的对象 以它们为准滑动整理老年代 没有注册的块固定在原地
+     */
+    protected void compact() {
+        if (AppContext.getSimulatedHeap() instanceof AbstractGenerationHeap h) {
+            logger.info("Starting compact phase.");
+            long free = h.compact(AbstractGenerationHeap.OLD_, nodesMap.keySet());
+            logger.info("Compact phase completed. free : " + free);
+        }
     }
 
     /**
@@ -70,15 +103,20 @@ public class ThreeColourSerialUnSafeGraph implements SimulatedGC<ThreeColourNode
      * if  x.color != white 那它一定存在引用
      * else 它可能存在引用或引用已被清楚 因为是此引用可能是别人的子序元素 它可能被联级"提前清扫"
      * 但不管怎么样 color == white  就会被移除
+     * 死亡的对象先收集起来 最后通过 freeAll 按地址排序合并后一次释放
      */
-    private void sweep() {
+    protected void sweep() {
         logger.info("Starting sweep phase.");
+        List<SimulatedObj> dead = new ArrayList<>();
         Iterator<ThreeColourNode> it = nodesMap.values().iterator();
         while (it.hasNext()) {
             ThreeColourNode node = it.next();
+            if (!isSweepable(node)) {
+                continue;
+            }
             if (node.getColor() == ThreeColourNode.Color.WHITE) {
                 if (node.getSource() != null) {
-                    node.clear();
+                    node.clear(dead);
                     logger.info("Node swept: " + node.getId());
                 }
                 it.remove();
@@ -86,11 +124,154 @@ public class ThreeColourSerialUnSafeGraph implements SimulatedGC<ThreeColourNode
                 node.setColor(ThreeColourNode.Color.WHITE);
             }
         }
-        for (ThreeColourNode shortActingRoot : shortActingRoots) {
-            shortActingRoot.clear();
+        ThreeColourNode shortActingRoot;
+        while ((shortActingRoot = shortActingRoots.poll()) != null) {
+            shortActingRoot.clear(dead);
+        }
+        long[] pointers = new long[dead.size()];
+        int[] sizes = new int[dead.size()];
+        for (int i = 0; i < dead.size(); i++) {
+            pointers[i] = dead.get(i).getPointer();
+            sizes[i] = dead.get(i).getAligningSize();
+        }
+        try {
+            AppContext.getSimulatedHeap().freeAll(pointers, sizes);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        youngNodes.removeIf(node -> node.getSource() == null);
+        rememberedSet.removeIf(node -> node.getSource() == null);
+        logger.info("Sweep phase completed. freed objects: " + dead.size());
+    }
+
+    /**
+     * 清扫是否处理这个节点 不处理的节点保持颜色 也不会被回收
+     * 串行的GC在 STW 下清扫 所有节点都要处理
+     */
+    protected boolean isSweepable(ThreeColourNode node) {
+        return true;
+    }
+
+    /**
+     * 复制式(Cheney) minor GC 只回收年轻代
+     * 1: 从根和记忆集开始广度优先追踪 第一次遇到的年轻代对象立刻拷贝到 to-survivor 或者晋升到老年代 (heap.scavenge)
+     * 拷贝的顺序就是 Cheney 的扫描队列 队列为空时所有可达的年轻代对象都已经被拷贝
+     * 追踪在老年代对象处停止 老年代到年轻代的引用由记忆集提供
+     * 2: 没有被追踪到的年轻代对象直接从图中移除 不会逐个 free
+     * 3: 更新记忆集 晋升后依然引用年轻代的节点加入 不再引用年轻代的节点移除
+     * 4: heap.flipSurvivors 重置 eden 和 from-survivor 交换 survivor
+     * 追踪和图上的工作只与根 记忆集和年轻代的节点成正比 与老年代的大小无关
+     * 被记忆集引用的年轻代对象即使老年代的引用者已经死亡也会存活 老年代的垃圾留给完整的GC
+     * 堆不是分代的堆(例如分区堆)时 退化为完整的GC
+     */
+    public void minorGc(Lock stwLock) {
+        if (!(AppContext.getSimulatedHeap() instanceof AbstractGenerationHeap heap)) {
+            gc(stwLock);
+            return;
+        }
+        try {
+            stwLock.lock();
+            logger.info("Starting minor gc.");
+            Queue<ThreeColourNode> scan = new ArrayDeque<>();
+            for (ThreeColourNode root : roots) {
+                if (isYoung(heap, root)) {
+                    forward(heap, root, scan);
+                } else {
+                    forwardReferences(heap, root, scan);
+                }
+            }
+            for (ThreeColourNode old : rememberedSet) {
+                forwardReferences(heap, old, scan);
+            }
+            while (!scan.isEmpty()) {
+                forwardReferences(heap, scan.poll(), scan);
+            }
+            int dropped = 0;
+            Iterator<ThreeColourNode> it = youngNodes.iterator();
+            while (it.hasNext()) {
+                ThreeColourNode node = it.next();
+                SimulatedObj so = node.getSource();
+                if (so == null) {
+                    it.remove();
+                } else if (node.getColor() == ThreeColourNode.Color.WHITE && heap.isYoung(so.getPointer())) {
+                    nodesMap.remove(so);
+                    node.getReference().clear();
+                    node.setSimulatedObj(null);
+                    it.remove();
+                    dropped++;
+                } else {
+                    node.setColor(ThreeColourNode.Color.WHITE);
+                    if (!heap.isYoung(so.getPointer())) {
+                        it.remove();
+                        if (referencesYoung(heap, node)) rememberedSet.add(node);
+                    }
+                }
+            }
+            rememberedSet.removeIf(node -> node.getSource() == null || !referencesYoung(heap, node));
+            // 年轻代中的短效根随 eden 一起丢弃 老年代的留给完整的GC释放
+            Iterator<ThreeColourNode> shortIt = shortActingRoots.iterator();
+            while (shortIt.hasNext()) {
+                ThreeColourNode node = shortIt.next();
+                if (node.getSource() == null || heap.isYoung(node.getSource().getPointer())) {
+                    node.setSimulatedObj(null);
+                    shortIt.remove();
+                }
+            }
+            heap.flipSurvivors();
+            logger.info("Minor gc completed. dropped: " + dropped + ", remembered: " + rememberedSet.size() + ", tenuring threshold: " + heap.getTenuringThreshold());
+        } finally {
+            stwLock.unlock();
+        }
+    }
+
+    /**
+     * 第一次遇到的节点染黑并加入扫描队列 年轻代对象同时拷贝到 to-survivor
+     */
+    private void forward(AbstractGenerationHeap heap, ThreeColourNode node, Queue<ThreeColourNode> scan) {
+        if (node.getColor() != ThreeColourNode.Color.WHITE || node.getSource() == null) {
+            return;
+        }
+        node.setColor(ThreeColourNode.Color.BLACK);
+        if (heap.isYoung(node.getSource().getPointer())) {
+            try {
+                heap.scavenge(node.getSource());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        scan.add(node);
+    }
+
+    /**
+     * 追踪节点的引用 只转发年轻代的节点 老年代的节点不会被追踪
+     */
+    private void forwardReferences(AbstractGenerationHeap heap, ThreeColourNode node, Queue<ThreeColourNode> scan) {
+        for (ReferenceGC ref : node.getReference()) {
+            if (ref instanceof ThreeColourNode next && isYoung(heap, next)) {
+                forward(heap, next, scan);
+            }
+        }
+    }
+
+    private static boolean isYoung(AbstractGenerationHeap heap, ThreeColourNode node) {
+        SimulatedObj so = node.getSource();
+        return so != null && heap.isYoung(so.getPointer());
+    }
+
+    private static boolean referencesYoung(AbstractGenerationHeap heap, ThreeColourNode node) {
+        for (ReferenceGC ref : node.getReference()) {
+            if (ref instanceof ThreeColourNode next && isYoung(heap, next)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 节点的对象被移出年轻代之后调用(例如 set_ 重新分配为巨型对象) 依然引用年轻代时加入记忆集
+     */
+    public void remember(ThreeColourNode node) {
+        if (AppContext.getSimulatedHeap() instanceof AbstractGenerationHeap heap && !isYoung(heap, node) && referencesYoung(heap, node)) {
+            rememberedSet.add(node);
         }
-        shortActingRoots.clear();
-        logger.info("Sweep phase completed.");
     }
 
     /**
@@ -123,10 +304,24 @@ public class ThreeColourSerialUnSafeGraph implements SimulatedGC<ThreeColourNode
 
     @Override
     public void register(ThreeColourNode obj) {
-        nodesMap.putIfAbsent(obj.getSource(), obj);
+        if (nodesMap.putIfAbsent(obj.getSource(), obj) == null) indexYoung(obj);
         if (obj.getSource().getIsRoot()) roots.add(obj);
     }
 
+    @Override
+    public void registerAll(Collection<ThreeColourNode> objs) {
+        for (ThreeColourNode obj : objs) {
+            if (nodesMap.putIfAbsent(obj.getSource(), obj) == null) indexYoung(obj);
+            if (obj.getSource().getIsRoot()) roots.add(obj);
+        }
+    }
+
+    private void indexYoung(ThreeColourNode obj) {
+        if (AppContext.getSimulatedHeap() instanceof AbstractGenerationHeap heap && isYoung(heap, obj)) {
+            youngNodes.add(obj);
+        }
+    }
+
 
     @Override
     public void register(Object current, Object... next) {
@@ -137,21 +332,46 @@ public class ThreeColourSerialUnSafeGraph implements SimulatedGC<ThreeColourNode
         if (currentNode == null) {
             return;
         }
+        AbstractGenerationHeap heap = AppContext.getSimulatedHeap() instanceof AbstractGenerationHeap h ? h : null;
         for (Object obj : next) {
             if (obj instanceof SimulatedObj soNext) {
                 ThreeColourNode nextNode = nodesMap.get(soNext);
-                if (nextNode != null)
+                if (nextNode != null) {
                     currentNode.addReference(nextNode);
-
+                    // 写屏障 老年代到年轻代的引用加入记忆集
+                    if (heap != null && isYoung(heap, nextNode) && !isYoung(heap, currentNode)) rememberedSet.add(currentNode);
+                }
             }
         }
     }
 
+    /**
+     * 对象在图中的节点 没有注册时返回 null
+     */
+    public ThreeColourNode getNode(Object obj) {
+        return obj instanceof SimulatedObj so ? nodesMap.get(so) : null;
+    }
+
     @Override
     public List<ThreeColourNode> getRootObjs() {
         return roots;
     }
 
+    /**
+     * 图中所有的对象 在清扫之后调用时即所有存活的对象
+     */
+    public List<SimulatedObj> getLiveObjs() {
+        return new ArrayList<>(nodesMap.keySet());
+    }
+
+    public CollectStrategy getCollectStrategy() {
+        return collectStrategy;
+    }
+
+    public void setCollectStrategy(CollectStrategy collectStrategy) {
+        this.collectStrategy = collectStrategy;
+    }
+
     @Override
     public long safeTime() {
         // no impl
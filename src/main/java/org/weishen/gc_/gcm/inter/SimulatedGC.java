@@ -1,4 +1,5 @@
 package org.weishen.gc_.gcm.inter;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
 
@@ -18,7 +19,8 @@ public interface SimulatedGC<T> {
      * 标记阶段：从根对象开始标记所有可达对象，以防止它们被回收。
      * mark() 的具体实现由子类提供 它是一种算法的实现
      * 它可以是串行的 @org.weishen.gc_.gcm.ThreeColourSerialUnSafeGraph
-     * 它也可以是并行的  //NO impl
+     * 它也可以是并行的 @org.weishen.gc_.gcm.ThreeColourParallelGraph
+     * 或者与 mutator 并发 @org.weishen.gc_.gcm.ThreeColourConcurrentGraph
      *
      */
     void mark();
@@ -35,6 +37,13 @@ public interface SimulatedGC<T> {
      */
     void register(T obj);
 
+    /**
+     * 批量注册新对象 只需要一次调用
+     *
+     * @param objs 要注册的对象。
+     */
+    void registerAll(Collection<T> objs);
+
     /**
      * 建立一个对象到其他一个或多个对象的引用关系。
      *
@@ -0,0 +1,188 @@
+package org.weishen.gc_.heap;
+
+/**
+ * 分块(chunk)储存的堆 用来模拟超过 2GB (8GB - 64GB) 的堆
+ * <p>
+ * 内存管理(分代 回收集 tlab...)见 @AbstractGenerationHeap
+ * 每个 chunk 的储存方式(byte[], 堆外内存...)由子类决定 子类只需要实现单个 chunk 内的存储原语
+ * <p>
+ * ##### 二维数组的方案
+ * 例如，假设我们有三个数组A、B、C，每个数组可以存储100个字节：
+ * [[0, 100] as A, [0, 100] as B, [0, 100] as C]
+ * <p>
+ * 1. 指针计算：指针是 long 每个 chunk 的大小是 2 的幂
+ * chunk  = pointer >>> chunkShift
+ * offset = pointer & chunkMask
+ * 只是一次移位和一次与运算 热路径上没有除法和取模
+ * <p>
+ * 2. 边界处理：分配不关心 chunk 的边界 一个对象可以跨越两个 chunk
+ * 例如 eden 的指针在数组A的位置88 申请16字节 [88, 100) 在A [0, 4) 在B
+ * 绝大多数访问都落在同一个 chunk 内 只有跨界时才会分段处理
+ */
+public abstract class AbstractChunkedGenerationHeap extends AbstractGenerationHeap {
+
+    /**
+     * 默认每个 chunk 1GB
+     */
+    public static final int DEFAULT_CHUNK_SHIFT = 30;
+
+    protected final int chunkShift;
+
+    protected final long chunkMask;
+
+    protected final int chunkSize;
+
+    protected final int chunkCount;
+
+    /**
+     * @param capacity 堆的最大容量，自动调整为8的倍数以避免溢出
+     * @param config   堆的可选配置 chunk 的大小为 1 << config.chunkShift (3 - 30)
+     */
+    protected AbstractChunkedGenerationHeap(long capacity, HeapConfig config) {
+        super(capacity, config);
+        int chunkShift = config.getChunkShift();
+        assert chunkShift >= 3 && chunkShift <= 30;
+        this.chunkShift = chunkShift;
+        this.chunkSize = 1 << chunkShift;
+        this.chunkMask = chunkSize - 1;
+        this.chunkCount = (int) ((this.capacity + chunkMask) >>> chunkShift);
+    }
+
+    /**
+     * 第 chunk 个块的大小 最后一个块只需要剩余的容量
+     */
+    protected int chunkLength(int chunk) {
+        long remaining = this.capacity - ((long) chunk << chunkShift);
+        return (int) Math.min(chunkSize, remaining);
+    }
+
+    /***************Chunk Storage***************/
+
+    protected abstract void fillChunk(int chunk, int offset, int length);
+
+    protected abstract void writeChunk(int chunk, int offset, byte[] src, int srcOffset, int length);
+
+    protected abstract void writeChunkByte(int chunk, int offset, byte value);
+
+    protected abstract void readChunk(int chunk, int offset, byte[] des, int desOffset, int length);
+
+    protected abstract byte readChunkByte(int chunk, int offset);
+
+    /**
+     * offset 是 8 的倍数 chunk 的大小至少是 8 所以 8 字节的值不会跨越 chunk
+     */
+    protected abstract boolean compareAndSetChunkLong(int chunk, int offset, long expected, long value);
+
+    /**
+     * 单个 chunk 之间的拷贝 源与目标是同一个 chunk 时需要支持重叠
+     */
+    protected abstract void copyChunk(int srcChunk, int srcOffset, int desChunk, int desOffset, int length);
+
+    @Override
+    protected void fill(long pointer, int size) {
+        int chunk = (int) (pointer >>> chunkShift);
+        int offset = (int) (pointer & chunkMask);
+        // 快速路径 同一个 chunk 内
+        if (offset + size <= chunkSize) {
+            fillChunk(chunk, offset, size);
+            return;
+        }
+        while (size > 0) {
+            int length = Math.min(size, chunkSize - offset);
+            fillChunk(chunk, offset, length);
+            size -= length;
+            chunk++;
+            offset = 0;
+        }
+    }
+
+    @Override
+    protected void write(long pointer, byte[] src, int srcOffset, int length) {
+        int chunk = (int) (pointer >>> chunkShift);
+        int offset = (int) (pointer & chunkMask);
+        if (offset + length <= chunkSize) {
+            writeChunk(chunk, offset, src, srcOffset, length);
+            return;
+        }
+        while (length > 0) {
+            int part = Math.min(length, chunkSize - offset);
+            writeChunk(chunk, offset, src, srcOffset, part);
+            srcOffset += part;
+            length -= part;
+            chunk++;
+            offset = 0;
+        }
+    }
+
+    @Override
+    protected void writeByte(long pointer, byte value) {
+        writeChunkByte((int) (pointer >>> chunkShift), (int) (pointer & chunkMask), value);
+    }
+
+    @Override
+    protected void read(long pointer, byte[] des, int desOffset, int length) {
+        int chunk = (int) (pointer >>> chunkShift);
+        int offset = (int) (pointer & chunkMask);
+        while (length > 0) {
+            int part = Math.min(length, chunkSize - offset);
+            readChunk(chunk, offset, des, desOffset, part);
+            desOffset += part;
+            length -= part;
+            chunk++;
+            offset = 0;
+        }
+    }
+
+    @Override
+    protected byte readByte(long pointer) {
+        return readChunkByte((int) (pointer >>> chunkShift), (int) (pointer & chunkMask));
+    }
+
+    @Override
+    public boolean compareAndSetLong(long pointer, long expected, long value) {
+        assert (pointer & 7) == 0;
+        return compareAndSetChunkLong((int) (pointer >>> chunkShift), (int) (pointer & chunkMask), expected, value);
+    }
+
+    /**
+     * 跨 chunk 的拷贝需要分段 每一段同时不跨越源和目标的 chunk
+     * 源与目标重叠并且目标在后时 从尾部向前拷贝 保证和 System.arraycopy 一样的语义
+     */
+    @Override
+    protected void copy(long srcPoint, long desPoint, int size) {
+        int srcOffset = (int) (srcPoint & chunkMask);
+        int desOffset = (int) (desPoint & chunkMask);
+        if (srcOffset + size <= chunkSize && desOffset + size <= chunkSize) {
+            copyChunk((int) (srcPoint >>> chunkShift), srcOffset, (int) (desPoint >>> chunkShift), desOffset, size);
+            return;
+        }
+        boolean backward = desPoint > srcPoint && desPoint < srcPoint + size;
+        if (!backward) {
+            long done = 0;
+            while (done < size) {
+                long s = srcPoint + done;
+                long d = desPoint + done;
+                int sOff = (int) (s & chunkMask);
+                int dOff = (int) (d & chunkMask);
+                int part = (int) Math.min(size - done, Math.min(chunkSize - sOff, chunkSize - dOff));
+                copyChunk((int) (s >>> chunkShift), sOff, (int) (d >>> chunkShift), dOff, part);
+                done += part;
+            }
+        } else {
+            long remaining = size;
+            while (remaining > 0) {
+                // [s - part, s) 和 [d - part, d) 需要各自落在一个 chunk 内
+                long s = srcPoint + remaining;
+                long d = desPoint + remaining;
+                int sTail = (int) (((s - 1) & chunkMask) + 1);
+                int dTail = (int) (((d - 1) & chunkMask) + 1);
+                int part = (int) Math.min(remaining, Math.min(sTail, dTail));
+                long sStart = s - part;
+                long dStart = d - part;
+                copyChunk((int) (sStart >>> chunkShift), (int) (sStart & chunkMask),
+                        (int) (dStart >>> chunkShift), (int) (dStart & chunkMask), part);
+                remaining -= part;
+            }
+        }
+    }
+}
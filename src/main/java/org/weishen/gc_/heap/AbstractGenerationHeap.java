@@ -0,0 +1,1459 @@
+package org.weishen.gc_.heap;
+
+import org.weishen.gc_.heap.inter.FreeList;
+import org.weishen.gc_.heap.inter.Generation;
+import org.weishen.gc_.heap.inter.HeapMemory;
+import org.weishen.gc_.heap.inter.SimulatedHeap;
+import org.weishen.gc_.obj_.inter.SimulatedObj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM 堆的严谨模拟
+ * <p>
+ * 遵循计算机内存设计
+ * ######
+ * 1: 内存对象
+ * 以8为基础单位
+ * 每个对象占用的内存大小也按8的倍数向上取整 ，这意味着即使一个对象实际上只需要几个字节的空间，它也至少占用8个字节（如果大小超过8个字节，则占用16个字节，以此类推）
+ * #####
+ * 2: 内存分代
+ * 模拟JVM分代 eden,s1,s2,old (不需要元空间)
+ * #####
+ * 3: 内存顺序分配
+ * allocate 会以正序分配 也就是以 0 开始到 capacity,这个为指针的模拟提供基础
+ * #####
+ * 4: 指针的模拟
+ * 使用指针操作内存 其基础是内存顺序 这点和真内存是一样的
+ * 支持运算和比较 指针是 long 不受单个Java数组 2GB 的限制
+ * #####
+ * 5: 高效 简洁的内存管理
+ * 使用assignedAddressPointer 指针控制内存的分配进度
+ * 注意: assignedAddressPointer几乎不会"回头" (除非重置和暂停整合),回头会带来多余的复杂性和内存维护
+ * 使用freedMemoryMaps 管理内存的回收与复用
+ * freedMemoryMaps.V 是 FreeList 默认是 DoublySkipList(基于双向链表的跳表 ) 可以在维持内存块顺序的同时，实现更高效的合并和分割操作，有效减少内存碎片化
+ * 复用策略可以通过 HeapConfig.freeListPolicy 选择 see@FreeListPolicy
+ * #####
+ * 6: 存储与管理分离
+ * 分代 回收集 tlab 等内存管理都在此类中完成
+ * 真正储存字节的方式(单个数组,多数组分块,堆外内存...)由子类决定 子类只需要实现 fill write copy 这些存储原语
+ * see@JVMArrayGenerationHeap see@JVMChunkedGenerationHeap see@JVMDirectGenerationHeap
+ *
+ * <p>
+ * 提供new_
+ * 依然会使用Java的反射(假如A对象 会在Java堆中真正的存在 反射实例化,也会以二进制和我们上述的设计储存在此虚拟内存中)
+ * 并且返回的对象一定是一个我们设计的基类(类似于 Object)
+ * 但这个基类的设计一定是参考 Java对象信息设计(head GC信息 颜色(支持二色和三色算法) 虚拟内存指针 等.. )
+ * <p>
+ */
+public abstract class AbstractGenerationHeap implements SimulatedHeap, Generation, HeapMemory, Closeable {
+
+    /**
+     * 幸存者区间指针 属于年轻代
+     */
+    protected long edenPointer;
+
+    protected long survivor1Pointer;
+
+    protected long survivor2Pointer;
+
+    protected long oldPointer;
+
+    /**
+     * 内存的分配管理的简化设计
+     * 一个对象new_会检查在 freedMemory 是否存在符合可用的地址
+     * 如果有则直接使用(需要使用allocateLock锁)
+     * 不需要移动assignedAddressPointer
+     * 如果没有找到assignedAddressPointer 移动指定长度 分配给与的内存
+     * <p>
+     * 我们要设置四个指针地址和回收集 分别对应这每个代
+     */
+    public static final String EDEN_ = "eden_";
+    public static final String SV1_ = "sv1_";
+    public static final String SV2_ = "sv2_";
+    public static final String OLD_ = "old_";
+
+    /**
+     * 每个代的分配指针(top)
+     * Map 只在 initializePointers 中写入 之后只读 所以不需要同步
+     * 指针本身是 AtomicLong 通过 CAS 前进 见 bumpAllocate
+     */
+    protected final Map<String, AtomicLong> assignedAddressPointers = new HashMap<>();
+
+    /**
+     * 已释放的内存地址映射。
+     * <p>
+     * 初始方案使用 TreeMap 存储，其中键为起始内存地址（指针），值为该块内存的长度（以8字节为单位）。
+     * TreeMap 保持内存块按地址有序，便于合并相邻的空闲块并快速定位可用内存。然而，TreeMap 在插入和删除操作中的效率较低，
+     * 特别是在需要频繁合并内存块的场景中。
+     * <p>
+     * 考虑到性能问题，我们提出使用基于双向链表的跳表（Skip List）作为替代方案。跳表提供了平衡树级别的效率，
+     * 同时在实现上更加简单。跳表可以快速地进行搜索、插入和删除操作，并且更加高效地支持内存块的合并操作。
+     * <p>
+     * 使用跳表作为内存管理的数据结构，可以在维持内存块顺序的同时，实现更高效的合并和分割操作，有效减少内存碎片化。
+     * 跳表的节点可以直接前后遍历，使得合并连续空闲内存块变得简单直接。
+     * <p>
+     * 空间管理示例：
+     * 堆内存空间：[--------------------------------------------------]
+     * 空闲块示例：[----空闲----][-----空闲-----]    [----空闲----]
+     * 释放后合并：[----------------空闲-----------------]    [----空闲----]
+     * 请求分配后：[----已分配----][空闲]    [----------------空闲-----------------]
+     * <p>
+     * 例如，内存布局可能如下所示：
+     * 初始状态（"f"表示空闲，"u"表示已使用）：
+     * |u|u|f|f|u|f|u|f|f|
+     * <p>
+     * 经过一段时间的分配和释放后（一些"u"块被释放变成"f"）：
+     * |u|f|f|u|f|f|u|f|f|
+     * <p>
+     * 合并相邻的空闲块：
+     * |u|fff|u|ff|u|fff|
+     * <p>
+     * 当请求新的内存块时，如果空闲块大于请求的大小，则进行分割：
+     * |u|f[2]|u|ff|u|fff|
+     * ^
+     * 分配的内存
+     * <p>
+     * 在这种管理策略下，内存分配过程被大大简化，同时也通过合并相邻空闲块来减少内存碎片。
+     * 考虑到性能和操作复杂度，跳表可能是管理这种内存模型的理想选择。
+     * <p>
+     * <p>
+     * freedMemoryMaps和 freedMemorySizeMap 并不是安全的 需要在线程安全的环境下进行
+     * (两个Map 在 initializePointers 中初始化后只读 跳表需要持有分代锁访问)
+     * freedMemorySizeMap 的值是 AtomicLong 无锁的分配路径会不加锁的读取它 用来判断是否需要检查回收集
+     * 合并后的空闲块可能超过 2GB(老年代) 所以块的大小是 long
+     * <p>
+     * 上述跳表的 first-fit 是默认的策略 see@SkipListFreeList 其他策略见 @FreeListPolicy
+     */
+    protected final Map<String, FreeList> freedMemoryMaps = new HashMap<>();
+
+    protected final Map<String, AtomicLong> freedMemorySizeMap = new HashMap<>();
+
+    /**
+     * 清零策略
+     * <p>
+     * 原来内存会被清零两次: free() 在分代锁内清零 memSet 分配时再 fill 一次
+     * 现在分配出去的内存由策略保证是干净的 memSet 不再 fill
+     * <p>
+     * dirtyRanges 记录每个代中已释放但还没有清零的区间 (key: start, value: end 不包含) 相邻的区间会合并
+     * 脏区间在回收集中 或者是 minor GC 重置之后分配指针之上用过的空间 (see@resetGeneration)
+     * 复用或移动分配指针时只清零相交的部分并移除 同一段字节不会被清零两次
+     * tlab 退役的 tail 从未被写过 归还时是干净的 不会标记为脏
+     * ZERO_ON_FREE 下 dirtyRanges 一直为空
+     * 需要持有分代锁访问
+     */
+    private final ZeroingPolicy zeroingPolicy;
+
+    protected final Map<String, TreeMap<Long, Long>> dirtyRanges = new HashMap<>();
+
+    /**
+     * 每个代的脏区间数 随 dirtyRanges 更新
+     * 无锁的 bump-pointer 分配不持有分代锁 只有没有脏区间时才可以跳过清零 (minor GC 之后分配指针之上可能是脏的)
+     */
+    private final Map<String, AtomicInteger> dirtyRangeCounts = new HashMap<>();
+
+    /**
+     * 后台预清零 每次持有分代锁只清零一小段 不会长时间阻塞分配
+     */
+    private static final int BACKGROUND_ZERO_CHUNK = 64 * 1024;
+
+    private static final long BACKGROUND_ZERO_IDLE_MS = 10;
+
+    private final Object zeroingSignal = new Object();
+
+    /**
+     * 后台预清零线程 第一次标记脏区间时启动 (构造完成之后 this 不会在构造中逃逸) close() 时中断
+     * 需要持有 zeroingSignal 访问
+     */
+    private Thread zeroingThread;
+
+    private boolean closed;
+
+    /**
+     * 巨型对象(humongous)
+     * <p>
+     * 大于 humongousThreshold 的年轻代对象直接分配到老年代连续的空间中
+     * 避免一个大对象吃掉 eden 的一大块 也避免晋升时再被拷贝一次
+     * humongousObjects 记录所有的巨型对象 (key: pointer, value: 对齐后的大小)
+     * 巨型对象不会被 move 只会在释放时整块归还到老年代的回收集
+     */
+    private final int humongousThreshold;
+
+    private final ConcurrentSkipListMap<Long, Integer> humongousObjects = new ConcurrentSkipListMap<>();
+
+    /**
+     * 分段锁实现
+     * 为了提高并发性和避免死锁，我们为不同的内存代分别实现了锁机制。
+     * 每个内存代（segment）通过索引在数组中对应一个锁对象。
+     * <p>
+     * 分段如下：
+     * - index 0 -> eden_: 年轻代中的Eden区。
+     * - index 1 -> sv1_: 年轻代中的第一个幸存者区（Survivor1）。
+     * - index 2 -> sv2_: 年轻代中的第二个幸存者区（Survivor2）。
+     * - index 3 -> old_: 老年代。
+     * <p>
+     * 死锁预防：
+     * 在进行跨代内存操作时（如对象晋升），可能需要同时获取多个锁。
+     * 为避免死锁，操作时获取锁的顺序必须从索引小的代向索引大的代进行。
+     * 这种顺序保证策略有效防止了死锁的发生。
+     */
+    private final Object[] segmentLock = new Object[]{
+            new Object(),  // 锁对象 for Eden
+            new Object(),  // 锁对象 for Survivor1
+            new Object(),  // 锁对象 for Survivor2
+            new Object()   // 锁对象 for Old
+    };
+
+    public Object getLock(String generation) {
+        if (EDEN_.equals(generation)) return segmentLock[0];
+        if (SV1_.equals(generation)) return segmentLock[1];
+        if (SV2_.equals(generation)) return segmentLock[2];
+        if (OLD_.equals(generation)) return segmentLock[3];
+        return null;
+    }
+
+    /***容量***/
+    protected final long capacity;
+
+    /**
+     * TLAB (Thread Local Allocation Buffer) 线程本地分配缓冲
+     * <p>
+     * eden 的分配全部走 segmentLock[0] 多线程下这把锁就是整个分配的瓶颈
+     * 参考 HotSpot 每个线程会从eden中切出一段私有的缓冲 [start, end)
+     * 绝大多数分配只是在自己的缓冲里移动 top (bump-pointer) 不需要任何锁
+     * 只有缓冲用尽需要重新申请(refill)时才会获取 eden 的锁
+     * <p>
+     * 缓冲示例：
+     * eden : [--tlab(A)--][--tlab(B)--][---共享分配---]...
+     * tlab : [start ... top ... end]
+     * ^已分配^  ^剩余(tail)^
+     * <p>
+     * 退役(retire)：refill 和 GC 时 剩余的 tail 会以 free 的方式归还到 eden 的回收集中
+     * 这样 getHeapDetails() 不会把线程还没用完的缓冲统计为已使用
+     * <p>
+     * tlab 只属于它的线程 只有在STW(所有线程都暂停分配)时 GC 线程才会访问它
+     */
+    private static final class Tlab {
+        long start;
+        long top;
+        long end;
+    }
+
+    public static final int DEFAULT_TLAB_SIZE = 16 * 1024;
+
+    /**
+     * tlab 剩余的空间大于 refillWasteLimit 时 不退役当前缓冲 而是把这次分配交给共享路径
+     * 避免一个稍大的对象让一个几乎没用的缓冲被浪费
+     */
+    private static final int TLAB_REFILL_WASTE_FRACTION = 64;
+
+    /**
+     * tlab 的大小 0 表示关闭 tlab
+     */
+    private final int tlabSize;
+
+    private final ThreadLocal<Tlab> tlabs = ThreadLocal.withInitial(Tlab::new);
+
+    /**
+     * 所有持有eden空间的tlab GC时需要全部退役
+     */
+    private final Set<Tlab> activeTlabs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 无锁分配模式
+     * 开启后 如果目标代的回收集不可能满足本次申请(已回收的总大小都不够)
+     * 分配将直接 CAS 移动分配指针 不再获取分代锁
+     * 回收集的复用依然需要持有分代锁
+     */
+    private final boolean lockFreeAllocation;
+
+    private final FreeListPolicy freeListPolicy;
+
+    /**
+     * 复制式 minor GC 的 from-survivor 另一个 survivor 是 to-survivor 每次 minor GC 之后互换
+     */
+    private volatile String fromSurvivor = SV1_;
+
+    /**
+     * 晋升阈值的上限 (参考 HotSpot 对象头中的年龄只有4位)
+     */
+    public static final int MAX_TENURING_THRESHOLD = 15;
+
+    public static final int DEFAULT_TARGET_SURVIVOR_RATIO = 50;
+
+    private final int maxTenuringThreshold;
+
+    private final int targetSurvivorRatio;
+
+    /**
+     * 动态的晋升阈值 年龄达到阈值的对象在 minor GC 时晋升到老年代
+     * 每次 minor GC 之后根据 ageTable 重新计算 see@computeTenuringThreshold
+     */
+    private volatile int tenuringThreshold;
+
+    /**
+     * 本次 minor GC 拷贝到 to-survivor 的字节 按年龄统计
+     */
+    private final long[] ageTable = new long[MAX_TENURING_THRESHOLD + 1];
+
+    /**
+     * @param capacity 堆的最大容量，自动调整为8的倍数以避免溢出
+     * @param config   堆的可选配置 see@HeapConfig
+     */
+    protected AbstractGenerationHeap(long capacity, HeapConfig config) {
+        assert capacity > 0 && config.getTlabSize() >= 0;
+        // 确保容量是8的倍数以避免溢出
+        this.capacity = capacity & (~7L);
+        CompressedPointers.checkCapacity(this.capacity);
+        this.tlabSize = (int) alignToEight(config.getTlabSize());
+        this.lockFreeAllocation = config.isLockFreeAllocation();
+        this.zeroingPolicy = config.getZeroingPolicy();
+        this.freeListPolicy = config.getFreeListPolicy();
+        assert config.getMaxTenuringThreshold() >= 1 && config.getMaxTenuringThreshold() <= MAX_TENURING_THRESHOLD;
+        this.maxTenuringThreshold = config.getMaxTenuringThreshold();
+        this.targetSurvivorRatio = config.getTargetSurvivorRatio();
+        this.tenuringThreshold = maxTenuringThreshold;
+        initializePointers(config.getFreeListPolicy());
+        // 默认半个 survivor
+        this.humongousThreshold = config.getHumongousThreshold() > 0
+                ? config.getHumongousThreshold() : (int) Math.min(Integer.MAX_VALUE, (survivor2Pointer - survivor1Pointer) / 2);
+    }
+
+
+    /**
+     * 初始化堆中各个区域的指针。
+     */
+    private void initializePointers(FreeListPolicy freeListPolicy) {
+        // 年轻代大约占1/3堆空间
+        long youngGenSize = alignToEight(this.capacity / 3);
+        this.edenPointer = 0;
+        long edenSize = alignToEight(youngGenSize * 8 / 10); // Eden占年轻代的8/10
+
+        // Survivor区各占剩余的1/10
+        long survivorSize = alignToEight((youngGenSize - edenSize) / 2);
+
+        // 设置Eden区和Survivor区的起始指针
+        this.survivor1Pointer = this.edenPointer + edenSize;
+        this.survivor2Pointer = this.survivor1Pointer + survivorSize;
+
+        // 老年代紧接着年轻代
+        this.oldPointer = this.survivor2Pointer + survivorSize;
+
+        // 记录各区的起始地址
+        assignedAddressPointers.put(EDEN_, new AtomicLong(edenPointer));
+        assignedAddressPointers.put(SV1_, new AtomicLong(survivor1Pointer));
+        assignedAddressPointers.put(SV2_, new AtomicLong(survivor2Pointer));
+        assignedAddressPointers.put(OLD_, new AtomicLong(oldPointer));
+
+        // 回收集
+        for (String generation : new String[]{EDEN_, SV1_, SV2_, OLD_}) {
+            freedMemoryMaps.put(generation, freeListPolicy.create(getBase(generation), getLimit(generation)));
+            freedMemorySizeMap.put(generation, new AtomicLong());
+            dirtyRanges.put(generation, new TreeMap<>());
+            dirtyRangeCounts.put(generation, new AtomicInteger());
+            if (freeListPolicy.ownsGeneration()) {
+                // 整个分代交给回收集 分配指针停在上边界 bump-pointer 永远不会成功 回收集用尽即OOM
+                long size = getLimit(generation) - getBase(generation);
+                freedMemoryMaps.get(generation).free(getBase(generation), size);
+                freedMemorySizeMap.get(generation).set(size);
+                assignedAddressPointers.get(generation).set(getLimit(generation));
+            }
+        }
+
+        // 输出各区的大小（以MB为单位）
+        logSizeInMB("Eden", edenSize);
+        logSizeInMB("Survivor1", survivorSize);
+        logSizeInMB("Survivor2", survivorSize);
+        logSizeInMB("Old", this.capacity - youngGenSize);
+    }
+
+    /**
+     * 以MB为单位输出内存区域的大小，并精确到两位小数。
+     *
+     * @param name 区域的名称
+     * @param size 区域的大小（以字节为单位）
+     */
+    private void logSizeInMB(String name, long size) {
+        int bytes_mb = 1024 * 1024;
+        double sizeInMB = size / (double) bytes_mb;
+        String formattedSize = String.format("%.2f", sizeInMB);
+        System.out.println(name + " Size: " + formattedSize + " MB");
+    }
+
+    // 对齐到8字节边界
+    protected static long alignToEight(long value) {
+        return (value + 7) & ~7L;
+    }
+
+    /***************Storage***************/
+
+    /**
+     * 将 [pointer, pointer + size) 重置为0
+     */
+    protected abstract void fill(long pointer, int size);
+
+    /**
+     * 将 src[offset, offset + length) 写入到 pointer 开始的内存
+     */
+    protected abstract void write(long pointer, byte[] src, int offset, int length);
+
+    /**
+     * 内存拷贝 语义同 System.arraycopy (支持重叠)
+     */
+    protected abstract void copy(long srcPoint, long desPoint, int size);
+
+    /**
+     * 写入单个字节 compact 编码直接写入堆时使用
+     */
+    protected abstract void writeByte(long pointer, byte value);
+
+    @Override
+    public void putByte(long pointer, byte value) {
+        writeByte(pointer, value);
+    }
+
+    @Override
+    public void putBytes(long pointer, byte[] src, int offset, int length) {
+        write(pointer, src, offset, length);
+    }
+
+    /**
+     * 将 pointer 开始的内存读取到 des[offset, offset + length)
+     */
+    protected abstract void read(long pointer, byte[] des, int offset, int length);
+
+    /**
+     * 读取单个字节 享元访问器读取字段时使用
+     */
+    protected abstract byte readByte(long pointer);
+
+    @Override
+    public byte getByte(long pointer) {
+        return readByte(pointer);
+    }
+
+    @Override
+    public void getBytes(long pointer, byte[] des, int offset, int length) {
+        read(pointer, des, offset, length);
+    }
+
+    /***************Core API***************/
+
+    /**
+     * allocate 需要保证线程线程安全
+     * 返回指定可写入的point(但没有写入,可以直接覆盖不用置0)
+     *
+     * @param normalizedSize 申请的大小
+     * @param generation     指定的分代
+     * @return 可写入的point
+     * @throws OutOfMemoryError
+     */
+    private long allocate(int normalizedSize, String generation) throws OutOfMemoryError, Exception {
+        assert normalizedSize > 0 && (normalizedSize & 7) == 0;
+        if (tlabSize > 0 && EDEN_.equals(generation) && normalizedSize <= tlabSize) {
+            return allocateInTlab(normalizedSize);
+        }
+        return allocateShared(normalizedSize, generation);
+    }
+
+    /**
+     * 共享的分配路径 需要获取分代锁
+     */
+    private long allocateShared(int normalizedSize, String generation) throws OutOfMemoryError {
+        // 回收集不可能满足并且没有脏区间时 无锁模式直接 CAS 移动分配指针
+        if (lockFreeAllocation && freedMemorySizeMap.get(generation).get() < normalizedSize
+                && dirtyRangeCounts.get(generation).get() == 0) {
+            return bumpAllocate(normalizedSize, generation);
+        }
+        synchronized (getLock(generation)) {
+            //检查可使用的回收内存
+            long freeMemoryPointer = findInFreedMemory(normalizedSize, generation);
+            if (freeMemoryPointer < 0) {
+                freeMemoryPointer = bumpAllocate(normalizedSize, generation);
+            }
+            // 回收集中的块 以及 minor GC 重置之后分配指针之上的空间 都可能是脏的
+            zeroDirty(generation, freeMemoryPointer, freeMemoryPointer + normalizedSize);
+            return freeMemoryPointer;
+        }
+    }
+
+    /**
+     * 移动分配指针 通过 CAS 前进 不需要持有分代锁
+     * 不需要给heap 带来太多不是它的责任的工作 allocate 只负责检查复用和申请 如果不够直接抛 由外层保证
+     *
+     * @return 可用的指针 分配指针已更新成next
+     */
+    private long bumpAllocate(int normalizedSize, String generation) throws OutOfMemoryError {
+        AtomicLong top = assignedAddressPointers.get(generation);
+        long limit = getLimit(generation);
+        for (; ; ) {
+            long allocatePointer = top.get();
+            if (allocatePointer + normalizedSize >= limit) {
+                // throw omm
+                throw new OutOfMemoryError("Heap space is full in " + generation + " generation.");
+            }
+            if (top.compareAndSet(allocatePointer, allocatePointer + normalizedSize)) {
+                return allocatePointer;
+            }
+        }
+    }
+
+    /**
+     * tlab 的快速路径 只在当前线程的缓冲中 bump-pointer
+     * 空间不够时 才会走 refillTlab 获取eden锁
+     */
+    private long allocateInTlab(int normalizedSize) throws OutOfMemoryError {
+        Tlab tlab = tlabs.get();
+        long top = tlab.top;
+        if (tlab.end - top >= normalizedSize) {
+            tlab.top = top + normalizedSize;
+            return top;
+        }
+        // 剩余的还不少 保留缓冲 这次走共享路径
+        if (tlab.end - top > tlabSize / TLAB_REFILL_WASTE_FRACTION) {
+            return allocateShared(normalizedSize, EDEN_);
+        }
+        refillTlab(tlab);
+        if (tlab.end - tlab.top < normalizedSize) {
+            // eden 已经切不出一个完整的 tlab 了 退回共享路径(可能会抛出OOM)
+            return allocateShared(normalizedSize, EDEN_);
+        }
+        top = tlab.top;
+        tlab.top = top + normalizedSize;
+        return top;
+    }
+
+    /**
+     * 退役当前缓冲并申请一个新的缓冲
+     * 新的缓冲同样遵循先复用回收集 再移动分配指针
+     */
+    private void refillTlab(Tlab tlab) {
+        synchronized (getLock(EDEN_)) {
+            retireTlab(tlab);
+            long start;
+            try {
+                start = allocateShared(tlabSize, EDEN_);
+            } catch (OutOfMemoryError e) {
+                return;
+            }
+            tlab.start = start;
+            tlab.top = start;
+            tlab.end = start + tlabSize;
+            activeTlabs.add(tlab);
+        }
+    }
+
+    /**
+     * 把tlab 剩余的 tail 归还到 eden 的回收集
+     * tail 从未被写过 是干净的
+     */
+    private void retireTlab(Tlab tlab) {
+        long remaining = tlab.end - tlab.top;
+        if (remaining > 0) {
+            reclaim(tlab.top, remaining, false);
+        }
+        tlab.start = tlab.top = tlab.end = 0;
+        activeTlabs.remove(tlab);
+    }
+
+    /**
+     * 退役所有线程的tlab
+     * 必须在STW下调用(GC 开始之前) 此时没有任何线程在tlab中分配
+     */
+    public void retireTlabs() {
+        synchronized (getLock(EDEN_)) {
+            for (Tlab tlab : activeTlabs.toArray(new Tlab[0])) {
+                retireTlab(tlab);
+            }
+        }
+    }
+
+    protected int alignSize(int size) {
+        return (size + 7) & ~7;
+    }
+
+    /**
+     * 检查是否超分带范围
+     */
+    private boolean isSpaceFull(int size, String generation) {
+        AtomicLong point = assignedAddressPointers.get(generation);
+        assert null != point;
+        long nextPoint = point.get() + size;
+        return nextPoint >= getLimit(generation);
+    }
+
+    /**
+     * 分代的起始地址
+     */
+    protected long getBase(String generation) {
+        return switch (generation) {
+            case EDEN_ -> edenPointer;
+            case SV1_ -> survivor1Pointer;
+            case SV2_ -> survivor2Pointer;
+            default -> oldPointer;
+        };
+    }
+
+    /**
+     * 分代的上边界(不包含)
+     */
+    protected long getLimit(String generation) {
+        return switch (generation) {
+            case EDEN_ -> survivor1Pointer;
+            case SV1_ -> survivor2Pointer;
+            case SV2_ -> oldPointer;
+            default -> capacity;
+        };
+    }
+
+    /**
+     * 检查目标代是否存在可用的已回收的空间
+     *
+     * @param size       需要的大小
+     * @param generation 目标代
+     * @return pointer 没有可用的空间返回 -1
+     */
+    private long findInFreedMemory(int size, String generation) {
+        long allocatedPointer = freedMemoryMaps.get(generation).allocate(size);
+        if (allocatedPointer >= 0) {
+            freedMemorySizeMap.get(generation).addAndGet(-size);
+        }
+        return allocatedPointer;
+    }
+
+
+    /**
+     * 释放指定的内存块，并尝试与相邻的空闲块合并。
+     *
+     * @param point 要释放的内存块的起始地址（必须是8的倍数）。
+     * @param size  要释放的内存块的大小（必须是8的倍数）。
+     * @throws Exception 如果释放过程中发生错误。
+     */
+    @Override
+    public void free(long point, int size) throws Exception {
+        CompressedPointers.check(point);
+        if (!humongousObjects.isEmpty()) {
+            humongousObjects.remove(point);
+        }
+        // 先读取对象头 ZERO_ON_FREE 会在 reclaim 中清零
+        addAlignmentLoss(point, -ObjectHeader.getPadding(this, point));
+        reclaim(point, size, true);
+    }
+
+    /**
+     * 批量释放
+     * 1: 按地址排序 相邻的死亡对象合并成一个块 (合并只在同一个代内)
+     * 2: 每个代只获取一次分代锁 所有的块一次交给回收集 see@FreeList#freeAll
+     * 清零和逐个 free 一样按合并后的块处理
+     */
+    @Override
+    public void freeAll(long[] pointers, int[] sizes) throws Exception {
+        assert pointers.length == sizes.length;
+        int n = pointers.length;
+        if (n == 0) return;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(i -> pointers[i]));
+        long[] points = new long[n];
+        long[] lengths = new long[n];
+        int from = 0;
+        while (from < n) {
+            String generation = getGeneration(pointers[order[from]]);
+            long limit = getLimit(generation);
+            int count = 0;
+            long loss = 0;
+            int to = from;
+            while (to < n && pointers[order[to]] < limit) {
+                long point = pointers[order[to]];
+                long size = sizes[order[to]];
+                assert (point & 7) == 0 && size > 0 && (size & 7) == 0;
+                CompressedPointers.check(point);
+                loss += ObjectHeader.getPadding(this, point);
+                if (count > 0 && points[count - 1] + lengths[count - 1] == point) {
+                    lengths[count - 1] += size;
+                } else {
+                    points[count] = point;
+                    lengths[count] = size;
+                    count++;
+                }
+                to++;
+            }
+            if (!humongousObjects.isEmpty()) {
+                for (int i = from; i < to; i++) humongousObjects.remove(pointers[order[i]]);
+            }
+            synchronized (getLock(generation)) {
+                freedMemoryMaps.get(generation).getStats().addAlignmentLoss(-loss);
+                freedMemoryMaps.get(generation).freeAll(points, lengths, count);
+                long total = 0;
+                for (int i = 0; i < count; i++) {
+                    total += lengths[i];
+                    markDirty(generation, points[i], points[i] + lengths[i]);
+                }
+                freedMemorySizeMap.get(generation).addAndGet(total);
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * 归还到所属代的回收集 合并由回收集负责
+     *
+     * @param dirty 内存是否被写过 脏的内存按清零策略处理
+     */
+    private void reclaim(long point, long size, boolean dirty) {
+        // 确保释放的内存地址是有效的，即必须是非负数(eden 从0开始)且为8的倍数
+        assert point >= 0 && (point & 7) == 0 && size > 0 && (size & 7) == 0;
+        // 根据内存地址确定它属于哪一个内存分区（代）
+        String generation = getGeneration(point);
+
+        // 锁定内存操作，确保线程安全
+        synchronized (getLock(generation)) {
+            freedMemoryMaps.get(generation).free(point, size);
+            freedMemorySizeMap.get(generation).addAndGet(size);
+            if (dirty) {
+                markDirty(generation, point, point + size);
+            }
+        }
+    }
+
+    /***************Zeroing***************/
+
+    /**
+     * 标记 [start, end) 为脏 并与相邻的脏区间合并
+     * ZERO_ON_FREE 直接清零
+     * 需要持有分代锁
+     */
+    protected void markDirty(String generation, long start, long end) {
+        if (start >= end) return;
+        if (zeroingPolicy == ZeroingPolicy.ZERO_ON_FREE) {
+            fillRange(start, end);
+            return;
+        }
+        TreeMap<Long, Long> dirty = dirtyRanges.get(generation);
+        Map.Entry<Long, Long> lower = dirty.floorEntry(start);
+        if (lower != null && lower.getValue() >= start) {
+            start = lower.getKey();
+            end = Math.max(end, lower.getValue());
+            dirty.remove(lower.getKey());
+        }
+        Map.Entry<Long, Long> higher;
+        while ((higher = dirty.ceilingEntry(start)) != null && higher.getKey() <= end) {
+            end = Math.max(end, higher.getValue());
+            dirty.remove(higher.getKey());
+        }
+        dirty.put(start, end);
+        dirtyRangeCounts.get(generation).set(dirty.size());
+        if (zeroingPolicy == ZeroingPolicy.BACKGROUND) {
+            synchronized (zeroingSignal) {
+                if (zeroingThread == null && !closed) {
+                    zeroingThread = new Thread(this::preZero, "heap-pre-zeroing");
+                    zeroingThread.setDaemon(true);
+                    zeroingThread.start();
+                }
+                zeroingSignal.notify();
+            }
+        }
+    }
+
+    /**
+     * 清零 [start, end) 中脏的部分 并标记为干净
+     * 需要持有分代锁
+     */
+    private void zeroDirty(String generation, long start, long end) {
+        TreeMap<Long, Long> dirty = dirtyRanges.get(generation);
+        if (dirty.isEmpty()) return;
+        Map.Entry<Long, Long> range = dirty.floorEntry(start);
+        if (range == null || range.getValue() <= start) {
+            range = dirty.higherEntry(start);
+        }
+        while (range != null && range.getKey() < end) {
+            long dirtyStart = range.getKey();
+            long dirtyEnd = range.getValue();
+            long zeroStart = Math.max(dirtyStart, start);
+            long zeroEnd = Math.min(dirtyEnd, end);
+            fillRange(zeroStart, zeroEnd);
+            dirty.remove(dirtyStart);
+            if (dirtyStart < zeroStart) dirty.put(dirtyStart, zeroStart);
+            if (dirtyEnd > zeroEnd) dirty.put(zeroEnd, dirtyEnd);
+            range = dirty.ceilingEntry(zeroEnd);
+        }
+        dirtyRangeCounts.get(generation).set(dirty.size());
+    }
+
+    /**
+     * 丢弃代中所有的脏区间 调用者保证这些字节已经被清零或者重新标记
+     * 需要持有分代锁
+     */
+    private void clearDirty(String generation) {
+        dirtyRanges.get(generation).clear();
+        dirtyRangeCounts.get(generation).set(0);
+    }
+
+    /**
+     * fill 只支持 int 大小 合并后的块可能超过 2GB 分段清零
+     */
+    private void fillRange(long start, long end) {
+        while (start < end) {
+            int size = (int) Math.min(end - start, Integer.MAX_VALUE & ~7);
+            fill(start, size);
+            start += size;
+        }
+    }
+
+    /**
+     * 后台预清零线程
+     * 轮流从每个代取出第一个脏区间 每次持有分代锁最多清零 BACKGROUND_ZERO_CHUNK 字节
+     * 所有代都干净时等待新的脏区间 被中断(close)时退出
+     */
+    private void preZero() {
+        String[] generations = {EDEN_, SV1_, SV2_, OLD_};
+        while (!Thread.currentThread().isInterrupted()) {
+            boolean zeroed = false;
+            for (String generation : generations) {
+                synchronized (getLock(generation)) {
+                    Map.Entry<Long, Long> range = dirtyRanges.get(generation).firstEntry();
+                    if (range != null) {
+                        long start = range.getKey();
+                        zeroDirty(generation, start, Math.min(range.getValue(), start + BACKGROUND_ZERO_CHUNK));
+                        zeroed = true;
+                    }
+                }
+            }
+            if (!zeroed) {
+                synchronized (zeroingSignal) {
+                    try {
+                        zeroingSignal.wait(BACKGROUND_ZERO_IDLE_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止后台预清零线程 剩下的脏区间依然会在分配时清零
+     * 之后不再启动新的线程
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (zeroingSignal) {
+            closed = true;
+            thread = zeroingThread;
+            zeroingThread = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void memSet(Object o, String generation) throws IOException, OutOfMemoryError, Exception {
+        if (null == o) return;
+        // compact 编码的对象没有中间缓冲 直接计算大小
+        byte[] serialized = ObjectCodec.serialize(o);
+        int size = ObjectCodec.sizeOf(o, serialized);
+
+        /**
+         * 每个对象都会有和对齐内存和真正内存
+         * real 和 aligning 内存
+         * 并且 aligning 一定大于 real 向上取对齐数
+         * 那么写入内存一定是以对齐内存写入
+         * 反序列号读取时间使用 point + realSize
+         *
+         */
+        int aligningSize = ObjectCodec.alignedSizeOf(size);
+        long allocatePoint;
+        if (isHumongousSize(aligningSize, generation)) {
+            allocatePoint = allocateHumongous(aligningSize);
+        } else {
+            allocatePoint = allocate(aligningSize, generation);
+        }
+        place(o, serialized, size, allocatePoint, aligningSize);
+    }
+
+    /**
+     * 新的空间和原来的在同一个代 巨型对象在老年代 超过巨型阈值时新的空间是巨型的
+     */
+    @Override
+    public long reallocate(long pointer, int size, int newSize) throws OutOfMemoryError, Exception {
+        assert newSize > 0 && (newSize & 7) == 0;
+        String generation = getGeneration(pointer);
+        long newPointer = isHumongousSize(newSize, generation) ? allocateHumongous(newSize) : allocate(newSize, generation);
+        copy(pointer, newPointer, Math.min(size, newSize));
+        ObjectHeader.setBlockSize(this, newPointer, newSize);
+        addAlignmentLoss(newPointer, ObjectHeader.getPadding(this, newPointer));
+        free(pointer, size);
+        return newPointer;
+    }
+
+    private boolean isHumongousSize(int aligningSize, String generation) {
+        return aligningSize > humongousThreshold && !OLD_.equals(generation);
+    }
+
+    private long allocateHumongous(int aligningSize) throws Exception {
+        long allocatePoint = allocate(aligningSize, OLD_);
+        humongousObjects.put(allocatePoint, aligningSize);
+        return allocatePoint;
+    }
+
+    /**
+     * 写入已经分配好的内存 并设置对象的指针和大小
+     */
+    private void place(Object o, byte[] serialized, int size, long allocatePoint, int aligningSize) {
+        if (o instanceof SimulatedObj so) {
+            so.setPointer(allocatePoint);
+            so.setSize(size);
+            so.setAligningSize(aligningSize);
+        }
+        // allocate 返回的内存由清零策略保证是干净的 对齐的填充部分不需要再 fill
+        ObjectCodec.write(this, allocatePoint, aligningSize, size, o, serialized);
+        addAlignmentLoss(allocatePoint, aligningSize - size);
+    }
+
+    /**
+     * 块所在分代的对齐损失 see@FragmentationStats#getAlignmentLoss
+     *
+     * @param bytes 块对象头中的 padding 释放时为负数
+     */
+    private void addAlignmentLoss(long pointer, long bytes) {
+        if (bytes != 0) freedMemoryMaps.get(getGeneration(pointer)).getStats().addAlignmentLoss(bytes);
+    }
+
+    /**
+     * 遍历对象头重新计算所有分代的对齐损失 (see@JVMMappedGenerationHeap 还原之后)
+     */
+    void recountAlignmentLoss() {
+        for (String generation : new String[]{EDEN_, SV1_, SV2_, OLD_}) {
+            long[] loss = {0};
+            walk(generation, (pointer, classId, blockSize, mark) -> loss[0] += ObjectHeader.paddingOf(mark));
+            FragmentationStats stats = freedMemoryMaps.get(generation).getStats();
+            stats.resetAlignmentLoss();
+            stats.addAlignmentLoss(loss[0]);
+        }
+    }
+
+    /**
+     * 批量的 memSet
+     * 所有对象的序列化共用一个缓冲(compact 编码不需要) 非巨型对象通过 allocateBatch 在一次加锁中分配一段连续的空间 依次排列
+     * 巨型对象依然单独分配到老年代
+     */
+    @Override
+    public void memSetBatch(Object[] objects, String generation) throws IOException, OutOfMemoryError, Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[][] serialized = new byte[objects.length][];
+        int[] objectSizes = new int[objects.length];
+        boolean[] placed = new boolean[objects.length];
+        int[] sizes = new int[objects.length];
+        int batchCount = 0;
+        for (int i = 0; i < objects.length; i++) {
+            serialized[i] = ObjectCodec.serialize(objects[i], baos);
+            objectSizes[i] = ObjectCodec.sizeOf(objects[i], serialized[i]);
+            int aligningSize = ObjectCodec.alignedSizeOf(objectSizes[i]);
+            if (isHumongousSize(aligningSize, generation)) {
+                place(objects[i], serialized[i], objectSizes[i], allocateHumongous(aligningSize), aligningSize);
+                placed[i] = true;
+            } else {
+                sizes[batchCount++] = aligningSize;
+            }
+        }
+        long[] pointers = allocateBatchRaw(Arrays.copyOf(sizes, batchCount), generation);
+        for (int i = 0, j = 0; i < objects.length; i++) {
+            if (placed[i]) continue;
+            place(objects[i], serialized[i], objectSizes[i], pointers[j], sizes[j]);
+            j++;
+        }
+    }
+
+    /**
+     * set target mem to be Obj
+     * 设置内存区域的内容。如果指定，可以先重置该区域为零，然后写入对象的序列化数据。
+     * memSet 并不做任何保证正确写入和写入的线程安全 在调用memSet之前需要调用方保证
+     *
+     * @param pointer 指针
+     * @param size    写入区域的大小
+     * @param o       要写入的对象，如果为null，则只进行重置操作。
+     * @param isReset 是否在写入前将内存区域重置为零。
+     */
+    public void memSet(long pointer, int size, Object o, boolean isReset) throws IOException, OutOfMemoryError, Exception {
+        // 验证指针和大小的有效性
+        assert pointer >= 0 && (pointer & 7) == 0 && size > 0 && (size & 7) == 0;
+        // 如果需要，重置内存区域为0
+        if (isReset) {
+            fill(pointer, size);
+        }
+        // 如果提供了对象，则将其序列化并写入内存
+        if (o != null)
+            memSet(o, getGeneration(pointer));
+    }
+
+    protected String getGeneration(long point) {
+        if (point < survivor1Pointer) {
+            return EDEN_;
+        } else if (point < survivor2Pointer) {
+            return SV1_;
+        } else if (point < oldPointer) {
+            return SV2_;
+        } else if (point < capacity) {
+            return OLD_;
+        }
+        throw new IllegalArgumentException("point : " + point + " ,illegality.");
+    }
+
+    @Override
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+
+    @Override
+    public long allocate(int size) throws OutOfMemoryError, Exception {
+        throw new RuntimeException("not support!");
+    }
+
+    /**
+     * move 通常是代与代之间的移动
+     * 安全的move 需要配合allocate使用
+     * @param srcPoint 源内存地址（指针）
+     * @param desPoint 目标内存地址（指针）
+     * @param size     移动的内存大小
+     */
+    @Override
+    public void move(long srcPoint, long desPoint, int size) throws Exception {
+        CompressedPointers.check(srcPoint);
+        CompressedPointers.check(desPoint);
+        if (isHumongous(srcPoint)) {
+            throw new IllegalStateException("humongous object : " + srcPoint + " is never moved.");
+        }
+        //检查desPoint 的合法性和可行性
+        String srcGeneration = getGeneration(srcPoint);
+        String desGeneration = getGeneration(desPoint);
+        Object[] locks = new Object[2];
+        //
+        long srcAssigned = assignedAddressPointers.get(srcGeneration).get();
+        long desAssigned = assignedAddressPointers.get(desGeneration).get();
+        //如果大于当前的分配指针 就证明不是覆盖的 直接检查边界
+        if (desPoint >= desAssigned && isSpaceFull(size, desGeneration)) {
+            throw new OutOfMemoryError("Heap space is full in " + desGeneration + " generation. move failed");
+        }
+        if (srcAssigned < desAssigned) {
+            locks[0] = getLock(srcGeneration);
+            locks[1] = getLock(desGeneration);
+        } else {
+            locks[1] = getLock(srcGeneration);
+            locks[0] = getLock(desGeneration);
+        }
+        /** 如果是同一个代 那么 lock[0] = lock[1] sync 是可重入的 ,如果不是同一代 assigned 可以确定 分段锁的 优先级 越小优先级越高 */
+        synchronized (locks[0]) {
+            synchronized (locks[1]) {
+                copy(srcPoint, desPoint, size);
+                addAlignmentLoss(desPoint, ObjectHeader.getPadding(this, desPoint));
+                free(srcPoint, size);
+            }
+        }
+    }
+
+    /***************Compaction***************/
+
+    /**
+     * LISP2 滑动整理 (sliding mark-compact) 需要在STW下 GC 清扫之后调用
+     * <p>
+     * 长时间运行后回收集会变成大量细碎的空洞 first-fit 越来越慢 也越来越容易失败
+     * 整理把分代中所有存活的对象按地址顺序滑到分代的底部:
+     * 1: 计算转发地址 : 按地址顺序 每个对象的新地址 = 分代起始地址 + 前面所有存活对象的大小
+     * 2: 更新指针     : SimulatedObj.setPointer(转发地址)
+     * 3: 移动         : 按地址顺序拷贝 新地址一定不大于旧地址 不会覆盖还没有移动的对象
+     * 之后回收集被清空 分配指针回到最后一个存活对象之后 恢复纯 bump-pointer 分配
+     * <p>
+     * 分代中的块通过对象头遍历(see@walk) 回收集中的块是空闲的 其余的块都会被保留:
+     * - liveObjs 中的对象滑动
+     * - 巨型对象 以及不在 liveObjs 中的块 (没有注册到GC图的对象 原始块 热重启还原的对象) 没有可以更新的指针 固定在原地
+     * 固定的块前面的空隙留在回收集中 之后的对象从它的末尾继续滑动
+     * 滑走后空出的尾部在分配指针之上 会被立刻清零 (分配指针之上的内存必须是干净的)
+     * 管理整个分代的回收集(buddy) 尾部直接归还到回收集
+     * <p>
+     * 垃圾需要在这之前释放(GC 清扫) 否则会被当作固定的块保留
+     *
+     * @param generation 需要整理的分代
+     * @param liveObjs   所有存活的对象 用于更新指针
+     * @return 整理后空闲的字节
+     * @throws IllegalStateException liveObjs 中的对象不在任何块的起始地址
+     */
+    public long compact(String generation, Collection<? extends SimulatedObj> liveObjs) {
+        long base = getBase(generation);
+        long limit = getLimit(generation);
+        Map<Long, SimulatedObj> byPointer = new HashMap<>();
+        for (SimulatedObj so : liveObjs) {
+            if (so.getPointer() >= base && so.getPointer() < limit) byPointer.put(so.getPointer(), so);
+        }
+
+        synchronized (getLock(generation)) {
+            AtomicLong top = assignedAddressPointers.get(generation);
+            long oldTop = top.get();
+            // 按地址顺序的块 固定的块 obj 为 null
+            List<long[]> blocks = new ArrayList<>();
+            List<SimulatedObj> objs = new ArrayList<>();
+            walk(generation, (pointer, classId, blockSize, mark) -> {
+                SimulatedObj so = byPointer.remove(pointer);
+                blocks.add(new long[]{pointer, blockSize});
+                objs.add(so == null || isHumongous(pointer) ? null : so);
+            });
+            if (!byPointer.isEmpty()) {
+                throw new IllegalStateException("live object at : " + byPointer.keySet().iterator().next() + " is not a block in " + generation);
+            }
+            long[] sources = new long[blocks.size()];
+            long[] forwards = new long[blocks.size()];
+            List<long[]> holes = new ArrayList<>();
+            // 1: 转发地址
+            long compactTop = base;
+            for (int i = 0; i < blocks.size(); i++) {
+                sources[i] = blocks.get(i)[0];
+                long size = blocks.get(i)[1];
+                if (objs.get(i) == null) {
+                    if (sources[i] > compactTop) holes.add(new long[]{compactTop, sources[i]});
+                    forwards[i] = sources[i];
+                    compactTop = sources[i] + size;
+                } else {
+                    forwards[i] = compactTop;
+                    compactTop += size;
+                }
+            }
+            // 2: 更新指针 转发地址同时记录在对象头中
+            for (int i = 0; i < blocks.size(); i++) {
+                if (objs.get(i) == null) continue;
+                if (forwards[i] != sources[i]) ObjectHeader.forward(this, sources[i], forwards[i]);
+                objs.get(i).setPointer(forwards[i]);
+            }
+            // 3: 滑动
+            for (int i = 0; i < blocks.size(); i++) {
+                if (forwards[i] != sources[i]) {
+                    copy(sources[i], forwards[i], (int) blocks.get(i)[1]);
+                    ObjectHeader.clearForwarded(this, forwards[i]);
+                }
+            }
+
+            FreeList freeList = freedMemoryMaps.get(generation);
+            freeList.clear();
+            clearDirty(generation);
+            fillRange(compactTop, oldTop);
+            long freeSize = 0;
+            for (long[] hole : holes) {
+                freeList.free(hole[0], hole[1] - hole[0]);
+                markDirty(generation, hole[0], hole[1]);
+                freeSize += hole[1] - hole[0];
+            }
+            if (freeListPolicy.ownsGeneration()) {
+                if (limit > compactTop) freeList.free(compactTop, limit - compactTop);
+                freeSize += limit - compactTop;
+            } else {
+                top.set(compactTop);
+            }
+            freedMemorySizeMap.get(generation).set(freeSize);
+            return freeSize + limit - top.get();
+        }
+    }
+
+    /***************Scavenge***************/
+
+    /**
+     * 复制式(Cheney) minor GC 中处理一个存活的年轻代对象 需要在STW下调用
+     * 年龄加一 达到晋升阈值的对象晋升到老年代
+     * 否则按追踪的顺序拷贝到 to-survivor 的分配指针 (to-survivor 中的对象顺序就是 Cheney 的扫描队列)
+     * 原来的空间不会被释放 由 flipSurvivors 整体重置
+     * to-survivor 放不下时同样提前晋升
+     *
+     * @return 对象的新地址
+     */
+    public long scavenge(SimulatedObj so) throws Exception {
+        assert isYoung(so.getPointer()) && !getToSurvivor().equals(getGeneration(so.getPointer()));
+        long srcPoint = so.getPointer();
+        int age = Math.min(ObjectHeader.getAge(this, srcPoint) + 1, MAX_TENURING_THRESHOLD);
+        ObjectHeader.setAge(this, srcPoint, age);
+        so.setAge(age);
+        int size = so.getAligningSize();
+        long desPoint;
+        if (age >= tenuringThreshold) {
+            desPoint = promote(so);
+        } else {
+            try {
+                desPoint = allocateShared(size, getToSurvivor());
+                copy(srcPoint, desPoint, size);
+                addAlignmentLoss(desPoint, ObjectHeader.getPadding(this, desPoint));
+                so.setPointer(desPoint);
+                ageTable[age] += size;
+            } catch (OutOfMemoryError e) {
+                desPoint = promote(so);
+            }
+        }
+        // 原来的位置在 flipSurvivors 时整体重置 转发地址只在本次 minor GC 中有效
+        ObjectHeader.forward(this, srcPoint, desPoint);
+        return desPoint;
+    }
+
+    /**
+     * 晋升到老年代 : 在老年代分配 再 copy
+     * 不使用 move: 原来的年轻代空间由 flipSurvivors 整体重置 不需要逐个 free (也不能写入回收集 之后还要在原地写转发地址)
+     */
+    private long promote(SimulatedObj so) throws Exception {
+        int size = so.getAligningSize();
+        long desPoint = allocate(size, OLD_);
+        copy(so.getPointer(), desPoint, size);
+        addAlignmentLoss(desPoint, ObjectHeader.getPadding(this, desPoint));
+        so.setPointer(desPoint);
+        return desPoint;
+    }
+
+    /**
+     * 动态晋升阈值 (参考 HotSpot)
+     * 按年龄从小到大累加拷贝到 to-survivor 的字节 超过 survivor * targetSurvivorRatio% 时的年龄就是新的阈值
+     * survivor 快满时阈值降低 更多对象提前晋升 survivor 不会溢出
+     * survivor 宽裕时阈值回到上限 短命的对象有足够的时间在年轻代死去
+     */
+    private void computeTenuringThreshold() {
+        long desired = (getLimit(SV1_) - getBase(SV1_)) * targetSurvivorRatio / 100;
+        long total = 0;
+        int age = 1;
+        while (age < MAX_TENURING_THRESHOLD) {
+            total += ageTable[age];
+            if (total > desired) break;
+            age++;
+        }
+        tenuringThreshold = Math.min(age, maxTenuringThreshold);
+        Arrays.fill(ageTable, 0L);
+    }
+
+    /**
+     * minor GC 的最后一步 存活对象都已经拷贝出去
+     * eden 和 from-survivor 整体重置: 回收集清空 分配指针回到起始地址 死亡的对象不需要逐个 free
+     * 然后交换两个 survivor 并重新计算晋升阈值
+     */
+    public void flipSurvivors() {
+        resetGeneration(EDEN_);
+        resetGeneration(fromSurvivor);
+        fromSurvivor = getToSurvivor();
+        computeTenuringThreshold();
+    }
+
+    /**
+     * 清空整个分代
+     * 用过的部分 [base, top) 按清零策略标记为脏 (see@ZeroingPolicy) 而不是立刻清零
+     * ZERO_ON_ALLOCATE / BACKGROUND 下重置的代价与用过的空间无关 分配(或后台线程)时再清零
+     * 管理整个分代的回收集(buddy) 重新把整个分代交给回收集
+     */
+    private void resetGeneration(String generation) {
+        synchronized (getLock(generation)) {
+            long base = getBase(generation);
+            long limit = getLimit(generation);
+            AtomicLong top = assignedAddressPointers.get(generation);
+            FreeList freeList = freedMemoryMaps.get(generation);
+            long used = top.get();
+            freeList.clear();
+            freeList.getStats().resetAlignmentLoss();
+            clearDirty(generation);
+            markDirty(generation, base, used);
+            if (freeListPolicy.ownsGeneration()) {
+                freeList.free(base, limit - base);
+                freedMemorySizeMap.get(generation).set(limit - base);
+            } else {
+                freedMemorySizeMap.get(generation).set(0);
+                top.set(base);
+            }
+        }
+    }
+
+    public int getTenuringThreshold() {
+        return tenuringThreshold;
+    }
+
+    public String getFromSurvivor() {
+        return fromSurvivor;
+    }
+
+    /**
+     * 还原 minor GC 的状态 (see@JVMMappedGenerationHeap 热重启) 需要在使用堆之前调用
+     */
+    void restoreSurvivorState(String fromSurvivor, int tenuringThreshold) {
+        if (!SV1_.equals(fromSurvivor) && !SV2_.equals(fromSurvivor)) {
+            throw new IllegalArgumentException("from survivor : " + fromSurvivor + " ,illegality.");
+        }
+        if (tenuringThreshold < 1 || tenuringThreshold > maxTenuringThreshold) {
+            throw new IllegalArgumentException("tenuring threshold : " + tenuringThreshold + " ,illegality.");
+        }
+        this.fromSurvivor = fromSurvivor;
+        this.tenuringThreshold = tenuringThreshold;
+    }
+
+    public String getToSurvivor() {
+        return SV1_.equals(fromSurvivor) ? SV2_ : SV1_;
+    }
+
+    /**
+     * 是否在年轻代(eden 或 survivor)
+     */
+    public boolean isYoung(long point) {
+        return point < oldPointer;
+    }
+
+    /**
+     * 是否是巨型对象 巨型对象不会被 move
+     */
+    public boolean isHumongous(long point) {
+        return humongousObjects.containsKey(point);
+    }
+
+    public int getHumongousThreshold() {
+        return humongousThreshold;
+    }
+
+    @Override
+    public String getHeapDetails() {
+        // 获取每个分代的空闲内存大小
+        long freeEden = freedMemorySizeMap.get(EDEN_).get();
+        long freeSv1 = freedMemorySizeMap.get(SV1_).get();
+        long freeSv2 = freedMemorySizeMap.get(SV2_).get();
+        long freeOld = freedMemorySizeMap.get(OLD_).get();
+
+        // 计算每个分代的已使用内存
+        long usedEden = assignedAddressPointers.get(EDEN_).get() - edenPointer - freeEden;
+        long usedSv1 = assignedAddressPointers.get(SV1_).get() - survivor1Pointer - freeSv1;
+        long usedSv2 = assignedAddressPointers.get(SV2_).get() - survivor2Pointer - freeSv2;
+        long usedOld = assignedAddressPointers.get(OLD_).get() - oldPointer - freeOld;
+
+        return String.format("Heap Capacity: %d, Eden Used: %d, Survivor1 Used: %d, Survivor2 Used: %d, Old Used: %d",
+                capacity,
+                usedEden,
+                usedSv1,
+                usedSv2,
+                usedOld);
+    }
+
+    /**
+     * [base, top) 中除了回收集中的空闲块 都是连续排列的对象 按对象头中的块大小跳到下一个对象
+     * eden 先退役所有的 TLAB 剩余的空间归还回收集
+     */
+    @Override
+    public void walk(String generation, ObjectHeader.Visitor visitor) {
+        if (EDEN_.equals(generation)) retireTlabs();
+        synchronized (getLock(generation)) {
+            long top = assignedAddressPointers.get(generation).get();
+            List<long[]> freeBlocks = new ArrayList<>();
+            freedMemoryMaps.get(generation).forEach((point, size) -> freeBlocks.add(new long[]{point, size}));
+            long p = getBase(generation);
+            int next = 0;
+            while (p < top) {
+                if (next < freeBlocks.size() && freeBlocks.get(next)[0] == p) {
+                    p += freeBlocks.get(next++)[1];
+                    continue;
+                }
+                int classId = ObjectHeader.getClassId(this, p);
+                int blockSize = ObjectHeader.getBlockSize(this, p);
+                if (classId == ClassTable.FREE || blockSize <= 0) {
+                    throw new IllegalStateException("no object header at : " + p + " in " + generation);
+                }
+                visitor.visit(p, classId, blockSize, ObjectHeader.getMarkOf(this, p, classId));
+                p += blockSize;
+            }
+        }
+    }
+
+    /**
+     * 分代的碎片统计 (空闲块数量 最大空闲块 按 2 的幂分桶的直方图 外部碎片率 对齐损失)
+     * 由回收集增量维护 读取是 O(1) 的 不需要持有分代锁 可以在监控线程中轮询
+     */
+    public FragmentationStats getFragmentation(String generation) {
+        return freedMemoryMaps.get(generation).getStats();
+    }
+
+    @Override
+    public long allocateOfGeneration(int size, String Generation) throws OutOfMemoryError, Exception {
+        // 根据代名称调用allocate进行内存分配
+        long pointer = allocate(size, Generation);
+        ObjectHeader.initRaw(this, pointer, size);
+        return pointer;
+    }
+
+    @Override
+    public long[] allocateBatch(int[] sizes, String generation) throws OutOfMemoryError, Exception {
+        long[] pointers = allocateBatchRaw(sizes, generation);
+        for (int i = 0; i < sizes.length; i++) {
+            ObjectHeader.initRaw(this, pointers[i], sizes[i]);
+        }
+        return pointers;
+    }
+
+    /**
+     * 一次加锁分配一段连续的空间 (复用回收集或者移动分配指针) 再按 sizes 依次切分
+     * 不经过 tlab 不写入对象头 (memSetBatch 随后写入完整的对象头)
+     */
+    private long[] allocateBatchRaw(int[] sizes, String generation) throws OutOfMemoryError, Exception {
+        long total = 0;
+        for (int size : sizes) {
+            assert size > 0 && (size & 7) == 0;
+            total += size;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("batch size : " + total + " ,illegality.");
+        }
+        long[] pointers = new long[sizes.length];
+        if (sizes.length == 0) return pointers;
+        long pointer = allocateShared((int) total, generation);
+        for (int i = 0; i < sizes.length; i++) {
+            pointers[i] = pointer;
+            pointer += sizes[i];
+        }
+        return pointers;
+    }
+
+    @Override
+    public long getUsedOfGeneration(String Generation) {
+        // 返回指定代已使用的内存大小
+        AtomicLong pointer = assignedAddressPointers.get(Generation);
+        if (pointer == null) {
+            return 0;
+        }
+        long freeSize = freedMemorySizeMap.get(Generation).get();
+        long basePointer = switch (Generation) {
+            case EDEN_ -> edenPointer;
+            case SV1_ -> survivor1Pointer;
+            case SV2_ -> survivor2Pointer;
+            case OLD_ -> oldPointer;
+            default -> -1;
+        };
+        return pointer.get() - basePointer - freeSize;
+    }
+
+    @Override
+    public long getFreeGeneration(String Generation) {
+        // 返回指定代的剩余空间
+        long used = getUsedOfGeneration(Generation);
+        long freeSize = freedMemorySizeMap.get(Generation).get();
+        long totalSpace = switch (Generation) {
+            case EDEN_ -> survivor1Pointer - edenPointer;
+            case SV1_ -> survivor2Pointer - survivor1Pointer;
+            case SV2_ -> oldPointer - survivor2Pointer;
+            case OLD_ -> capacity - oldPointer;
+            default -> -1;
+        };
+        return totalSpace - used + freeSize;
+    }
+
+    @Override
+    public String getDetails(String Generation) {
+        // 提供指定代的详细信息
+        return String.format("%s: Used: %d, Free: %d", Generation, getUsedOfGeneration(Generation), getFreeGeneration(Generation));
+    }
+
+
+}
@@ -0,0 +1,207 @@
+package org.weishen.gc_.heap;
+
+import org.weishen.gc_.heap.inter.FreeList;
+
+import java.util.Arrays;
+
+/**
+ * 位图的回收集
+ * <p>
+ * 分代按8字节(和 alignSize 的对齐一致)切成粒度(granule) 每个粒度在位图中占1位 1 表示已释放(空闲)
+ * 元数据固定为分代大小的 1/64 不会随着碎片的增多而增长 也没有任何节点对象
+ * <p>
+ * 1: 释放 : 把 [point, point + size) 对应的位置 1 相邻的空闲块天然连在一起 合并是隐式的
+ * 2: 分配 : first-fit 按字(64个粒度)扫描
+ * 用 numberOfTrailingZeros 找到下一个空闲粒度(run 的开始) 再对取反后的字找到下一个已使用粒度(run 的结束)
+ * run 足够长就清除对应的位 否则从 run 的结束继续
+ * <p>
+ * firstFree 记录第一个可能空闲的粒度 跳过分代头部已经用满的部分
+ * <p>
+ * 碎片统计以 run 为空闲块: 释放时找到左右相邻的 run 一起合并统计 分配时 run 被切短
+ * <p>
+ * granule: 0 1 2 3 4 5 6 7 ...
+ * bits   : 0 0 1 1 1 0 1 1 ...
+ * run    :     [---]   [--
+ */
+public class BitmapFreeList implements FreeList {
+
+    private static final int GRANULE_SHIFT = 3;
+
+    private final long base;
+
+    private final long granules;
+
+    private final long[] words;
+
+    /**
+     * 小于 firstFree 的粒度一定不空闲
+     */
+    private long firstFree;
+
+    private final FragmentationStats stats = new FragmentationStats();
+
+    public BitmapFreeList(long base, long limit) {
+        assert (base & 7) == 0 && limit >= base;
+        this.base = base;
+        this.granules = (limit - base) >>> GRANULE_SHIFT;
+        this.words = new long[(int) ((granules + 63) >>> 6)];
+        this.firstFree = granules;
+    }
+
+    @Override
+    public long allocate(int size) {
+        long need = size >>> GRANULE_SHIFT;
+        long from = firstFree;
+        while (true) {
+            long start = nextSet(from);
+            if (start < 0) {
+                return -1;
+            }
+            if (from == firstFree) {
+                firstFree = start;
+            }
+            long end = nextClear(start);
+            if (end - start >= need) {
+                clearRange(start, start + need);
+                stats.remove((end - start) << GRANULE_SHIFT);
+                if (end - start > need) stats.add((end - start - need) << GRANULE_SHIFT);
+                if (start == firstFree) {
+                    firstFree = start + need;
+                }
+                return base + (start << GRANULE_SHIFT);
+            }
+            from = end;
+        }
+    }
+
+    @Override
+    public void free(long point, long size) {
+        assert point >= base && ((point - base) >>> GRANULE_SHIFT) + (size >>> GRANULE_SHIFT) <= granules;
+        long start = (point - base) >>> GRANULE_SHIFT;
+        long end = start + (size >>> GRANULE_SHIFT);
+        // 与左右相邻的 run 合并
+        long runStart = start;
+        long runEnd = end;
+        if (start > 0 && testBit(start - 1)) {
+            runStart = prevClear(start - 1) + 1;
+            stats.remove((start - runStart) << GRANULE_SHIFT);
+        }
+        if (end < granules && testBit(end)) {
+            runEnd = nextClear(end);
+            stats.remove((runEnd - end) << GRANULE_SHIFT);
+        }
+        stats.add((runEnd - runStart) << GRANULE_SHIFT);
+        setRange(start, end);
+        if (start < firstFree) {
+            firstFree = start;
+        }
+    }
+
+    @Override
+    public void forEach(BlockConsumer consumer) {
+        long start = nextSet(firstFree);
+        while (start >= 0) {
+            long end = nextClear(start);
+            consumer.accept(base + (start << GRANULE_SHIFT), (end - start) << GRANULE_SHIFT);
+            start = nextSet(end);
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(words, 0L);
+        firstFree = granules;
+        stats.reset();
+    }
+
+    @Override
+    public FragmentationStats getStats() {
+        return stats;
+    }
+
+    private boolean testBit(long index) {
+        return (words[(int) (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    /**
+     * 从 from 开始(包含)向前 第一个已使用的粒度 没有返回 -1
+     */
+    private long prevClear(long from) {
+        int w = (int) (from >>> 6);
+        long word = ~words[w] & (-1L >>> (63 - (from & 63)));
+        while (word == 0) {
+            if (--w < 0) return -1;
+            word = ~words[w];
+        }
+        return ((long) w << 6) + 63 - Long.numberOfLeadingZeros(word);
+    }
+
+    /**
+     * 从 from 开始(包含) 第一个空闲的粒度 没有返回 -1
+     */
+    private long nextSet(long from) {
+        if (from >= granules) return -1;
+        int w = (int) (from >>> 6);
+        long word = words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w >= words.length) return -1;
+            word = words[w];
+        }
+        long index = ((long) w << 6) + Long.numberOfTrailingZeros(word);
+        return index < granules ? index : -1;
+    }
+
+    /**
+     * 从 from 开始(包含) 第一个已使用的粒度 没有返回 granules
+     */
+    private long nextClear(long from) {
+        if (from >= granules) return granules;
+        int w = (int) (from >>> 6);
+        long word = ~words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w >= words.length) return granules;
+            word = ~words[w];
+        }
+        return Math.min(((long) w << 6) + Long.numberOfTrailingZeros(word), granules);
+    }
+
+    /**
+     * 置 1 [from, to)
+     */
+    private void setRange(long from, long to) {
+        if (from >= to) return;
+        int fw = (int) (from >>> 6);
+        int tw = (int) ((to - 1) >>> 6);
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (fw == tw) {
+            words[fw] |= firstMask & lastMask;
+            return;
+        }
+        words[fw] |= firstMask;
+        for (int w = fw + 1; w < tw; w++) {
+            words[w] = -1L;
+        }
+        words[tw] |= lastMask;
+    }
+
+    /**
+     * 置 0 [from, to)
+     */
+    private void clearRange(long from, long to) {
+        if (from >= to) return;
+        int fw = (int) (from >>> 6);
+        int tw = (int) ((to - 1) >>> 6);
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (fw == tw) {
+            words[fw] &= ~(firstMask & lastMask);
+            return;
+        }
+        words[fw] &= ~firstMask;
+        for (int w = fw + 1; w < tw; w++) {
+            words[w] = 0L;
+        }
+        words[tw] &= ~lastMask;
+    }
+}
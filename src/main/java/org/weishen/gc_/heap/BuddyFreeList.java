@@ -0,0 +1,226 @@
+package org.weishen.gc_.heap;
+
+import org.weishen.gc_.heap.inter.FreeList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 伙伴系统(buddy)的回收集
+ * <p>
+ * 和其他策略不同 伙伴系统管理整个分代 [base, limit) 分代不再使用 bump-pointer (see@FreeListPolicy#ownsGeneration)
+ * 空间被切成 2 的幂的块 order 为 k 的块大小为 1 << k 起始偏移(相对 base)按 1 << k 对齐
+ * <p>
+ * 每个 order 一个位图 第 i 位表示 [i << k, (i + 1) << k) 在 order k 上空闲
+ * 1: 伙伴  : buddy = offset ^ (1 << k)
+ * 2: 切分  : 取 order j 的块 每下降一级 把上半部分标记为空闲
+ * 3: 合并  : 伙伴在同一个 order 上空闲 清除它的位 offset &= ~(1 << k) 上升一级
+ * 合并与切分都只是位运算 不需要遍历相邻的块
+ * <p>
+ * 分配的大小向上取到 2 的幂 多出的尾部立刻按对齐块归还 所以分配和释放的大小依然是精确的
+ * 释放任意 [point, point + size) 时 按对齐拆成若干个最大的块 每个块各自向上合并
+ * <p>
+ * 查找时 orderMap 的第 k 位表示 order k 有空闲块 numberOfTrailingZeros 找到最小的可用 order
+ * 同一个 order 内通过二级位图(summary)找到地址最小的空闲块
+ * <p>
+ * order 3 (8字节) 的位图大约是分代大小的 1/64 所有 order 加起来约 1/32
+ * <p>
+ * 碎片统计以伙伴块为空闲块 相邻但不是伙伴的块不能一起分配 分开统计
+ */
+public class BuddyFreeList implements FreeList {
+
+    private static final int MIN_ORDER = 3;
+
+    private final long base;
+
+    private final long span;
+
+    /**
+     * 分代内能放下的最大的块
+     */
+    private final int maxOrder;
+
+    /**
+     * bits[k] 第 i 位: order k 的第 i 个块空闲
+     */
+    private final long[][] bits;
+
+    /**
+     * summary[k] 第 w 位: bits[k][w] 不为 0
+     */
+    private final long[][] summary;
+
+    /**
+     * summary[k] 中可能不为 0 的最小下标
+     */
+    private final int[] summaryHint;
+
+    private final long[] freeCount;
+
+    /**
+     * 第 k 位: order k 有空闲块
+     */
+    private long orderMap;
+
+    private final FragmentationStats stats = new FragmentationStats();
+
+    public BuddyFreeList(long base, long limit) {
+        assert (base & 7) == 0 && limit >= base;
+        this.base = base;
+        this.span = (limit - base) & ~7L;
+        this.maxOrder = span < (1L << MIN_ORDER) ? MIN_ORDER - 1 : 63 - Long.numberOfLeadingZeros(span);
+        this.bits = new long[maxOrder + 1][];
+        this.summary = new long[maxOrder + 1][];
+        this.summaryHint = new int[maxOrder + 1];
+        this.freeCount = new long[maxOrder + 1];
+        for (int k = MIN_ORDER; k <= maxOrder; k++) {
+            long blocks = span >>> k;
+            int words = (int) ((blocks + 63) >>> 6);
+            bits[k] = new long[words];
+            summary[k] = new long[(words + 63) >>> 6];
+        }
+    }
+
+    @Override
+    public long allocate(int size) {
+        int order = Math.max(MIN_ORDER, 64 - Long.numberOfLeadingZeros(size - 1));
+        if (order > maxOrder) return -1;
+        long available = orderMap >>> order;
+        if (available == 0) return -1;
+
+        int k = order + Long.numberOfTrailingZeros(available);
+        long offset = lowest(k) << k;
+        clearBit(k, offset >>> k);
+        // 切分 每下降一级 上半部分(伙伴)空闲
+        while (k > order) {
+            k--;
+            setBit(k, (offset >>> k) + 1);
+        }
+        long blockSize = 1L << order;
+        if (blockSize > size) {
+            freeRange(offset + size, blockSize - size);
+        }
+        return base + offset;
+    }
+
+    @Override
+    public void free(long point, long size) {
+        assert point >= base && point + size <= base + span;
+        freeRange(point - base, size);
+    }
+
+    @Override
+    public void forEach(BlockConsumer consumer) {
+        List<long[]> blocks = new ArrayList<>();
+        for (int k = MIN_ORDER; k <= maxOrder; k++) {
+            long[] words = bits[k];
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    long index = ((long) w << 6) + Long.numberOfTrailingZeros(word);
+                    blocks.add(new long[]{index << k, 1L << k});
+                    word &= word - 1;
+                }
+            }
+        }
+        blocks.sort(Comparator.comparingLong(b -> b[0]));
+        // 不是伙伴的相邻块不会被合并 遍历时按地址连起来
+        long start = -1;
+        long end = -1;
+        for (long[] block : blocks) {
+            if (block[0] != end) {
+                if (start >= 0) consumer.accept(base + start, end - start);
+                start = block[0];
+            }
+            end = block[0] + block[1];
+        }
+        if (start >= 0) consumer.accept(base + start, end - start);
+    }
+
+    @Override
+    public void clear() {
+        for (int k = MIN_ORDER; k <= maxOrder; k++) {
+            Arrays.fill(bits[k], 0L);
+            Arrays.fill(summary[k], 0L);
+        }
+        Arrays.fill(summaryHint, 0);
+        Arrays.fill(freeCount, 0L);
+        orderMap = 0;
+        stats.reset();
+    }
+
+    @Override
+    public FragmentationStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 把 [offset, offset + size) 按对齐拆成最大的块 逐个释放
+     */
+    private void freeRange(long offset, long size) {
+        while (size > 0) {
+            int alignOrder = offset == 0 ? 63 : Long.numberOfTrailingZeros(offset);
+            int sizeOrder = 63 - Long.numberOfLeadingZeros(size);
+            int k = Math.min(Math.min(alignOrder, sizeOrder), maxOrder);
+            freeBlock(offset, k);
+            offset += 1L << k;
+            size -= 1L << k;
+        }
+    }
+
+    /**
+     * 释放 order k 的块 伙伴空闲时不断向上合并
+     */
+    private void freeBlock(long offset, int k) {
+        while (k < maxOrder) {
+            long buddyIndex = (offset >>> k) ^ 1;
+            if (buddyIndex >= (span >>> k) || !testBit(k, buddyIndex)) break;
+            clearBit(k, buddyIndex);
+            offset &= ~(1L << k);
+            k++;
+        }
+        setBit(k, offset >>> k);
+    }
+
+    /**
+     * order k 中地址最小的空闲块的下标 调用方保证存在
+     */
+    private long lowest(int k) {
+        long[] sum = summary[k];
+        int s = summaryHint[k];
+        while (sum[s] == 0) s++;
+        summaryHint[k] = s;
+        int w = (s << 6) + Long.numberOfTrailingZeros(sum[s]);
+        return ((long) w << 6) + Long.numberOfTrailingZeros(bits[k][w]);
+    }
+
+    private boolean testBit(int k, long index) {
+        return (bits[k][(int) (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    private void setBit(int k, long index) {
+        int w = (int) (index >>> 6);
+        if (bits[k][w] == 0) {
+            summary[k][w >>> 6] |= 1L << w;
+            if ((w >>> 6) < summaryHint[k]) summaryHint[k] = w >>> 6;
+        }
+        bits[k][w] |= 1L << index;
+        freeCount[k]++;
+        stats.add(1L << k);
+        orderMap |= 1L << k;
+    }
+
+    private void clearBit(int k, long index) {
+        int w = (int) (index >>> 6);
+        bits[k][w] &= ~(1L << index);
+        stats.remove(1L << k);
+        if (bits[k][w] == 0) {
+            summary[k][w >>> 6] &= ~(1L << w);
+        }
+        if (--freeCount[k] == 0) {
+            orderMap &= ~(1L << k);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.weishen.gc_.heap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 类表 对象头中的 class id 到 Class 的映射 see@ObjectHeader
+ * <p>
+ * 类型在第一次写入堆时注册 id 从 2 开始递增 之后不会改变
+ * 0 保留给空闲的块 (FREE) 1 保留给 allocateOfGeneration / allocateBatch 分配的原始块 (RAW) 所有的堆共用同一张表
+ * 映射文件的堆在 checkpoint 时保存这张表 还原时按原来的 id 重新注册
+ */
+public final class ClassTable {
+
+    public static final int FREE = 0;
+
+    public static final int RAW = 1;
+
+    private static final Map<Class<?>, Integer> IDS = new ConcurrentHashMap<>(Map.of(RawBlock.class, RAW));
+
+    private static final List<Class<?>> CLASSES = new ArrayList<>(List.of(Void.class, RawBlock.class));
+
+    /**
+     * 原始块在类表中的类型 块中没有 Java 对象
+     */
+    public static final class RawBlock {
+        private RawBlock() {
+        }
+    }
+
+    private ClassTable() {
+    }
+
+    public static int idOf(Class<?> type) {
+        Integer id = IDS.get(type);
+        return id != null ? id : register(type);
+    }
+
+    private static synchronized int register(Class<?> type) {
+        Integer id = IDS.get(type);
+        if (id != null) return id;
+        CLASSES.add(type);
+        IDS.put(type, CLASSES.size() - 1);
+        return CLASSES.size() - 1;
+    }
+
+    /**
+     * 当前的表 下标即 class id (下标 0 是 FREE 的占位)
+     */
+    static synchronized List<Class<?>> snapshot() {
+        return new ArrayList<>(CLASSES);
+    }
+
+    /**
+     * 按 id 的顺序还原表 (see@JVMMappedGenerationHeap 热重启之后 对象头中的 class id 保持不变)
+     * 已经注册的 id 必须是同一个类 没有注册的 id 依次补上
+     *
+     * @param classes 下标即 class id 下标 0 忽略
+     * @throws IllegalStateException 与当前的表冲突
+     */
+    static synchronized void restore(List<Class<?>> classes) {
+        for (int id = FREE + 1; id < classes.size(); id++) {
+            Class<?> type = classes.get(id);
+            if (id < CLASSES.size()) {
+                if (CLASSES.get(id) != type) {
+                    throw new IllegalStateException("class id : " + id + " is " + CLASSES.get(id).getName() + " ,not " + type.getName());
+                }
+            } else if (IDS.containsKey(type)) {
+                throw new IllegalStateException("class : " + type.getName() + " is registered as " + IDS.get(type) + " ,not " + id);
+            } else {
+                CLASSES.add(type);
+                IDS.put(type, id);
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException id 没有注册过
+     */
+    public static synchronized Class<?> classOf(int id) {
+        if (id <= FREE || id >= CLASSES.size()) {
+            throw new IllegalArgumentException("class id : " + id + " ,illegality.");
+        }
+        return CLASSES.get(id);
+    }
+}
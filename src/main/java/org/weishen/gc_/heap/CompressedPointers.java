@@ -0,0 +1,64 @@
+package org.weishen.gc_.heap;
+
+/**
+ * 压缩指针 (类似 HotSpot 的 compressed oops)
+ * <p>
+ * 所有的块都按 8 字节对齐 (see@AbstractGenerationHeap#alignSize) 指针的低 3 位永远是 0
+ * 压缩后的指针 narrow = pointer >>> 3 作为无符号 int 储存 4 字节可以寻址 32GB
+ * <p>
+ * 开启后 (-Dgc_.heap.compressedPointers=true) 增强类注入的 pointer 字段是 int 而不是 long
+ * getPointer / setPointer 依然是 long 的接口 在访问器内解码 / 编码 see@org.weishen.gc_.asm.NewEhASM
+ * 堆的容量不能超过 MAX_CAPACITY free / move / 回收集的地址都必须可以被编码
+ * <p>
+ * 字段的宽度在类增强时(agent 启动时)决定 所以开关是 JVM 级别的系统属性 而不是每个堆的配置
+ */
+public final class CompressedPointers {
+
+    public static final String PROPERTY = "gc_.heap.compressedPointers";
+
+    public static final int SHIFT = 3;
+
+    /**
+     * 32 位无符号的 narrow 指针左移 3 位之后能表示的范围
+     */
+    public static final long MAX_CAPACITY = 1L << (32 + SHIFT);
+
+    private static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+    private CompressedPointers() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * pointer 必须 8 字节对齐并且小于 MAX_CAPACITY
+     */
+    public static int encode(long pointer) {
+        if ((pointer & ((1 << SHIFT) - 1)) != 0 || pointer < 0 || pointer >= MAX_CAPACITY) {
+            throw new IllegalArgumentException("pointer : " + pointer + " can not be compressed.");
+        }
+        return (int) (pointer >>> SHIFT);
+    }
+
+    public static long decode(int narrow) {
+        return (narrow & 0xFFFFFFFFL) << SHIFT;
+    }
+
+    /**
+     * 开启压缩时 检查堆的容量能否全部寻址
+     */
+    static void checkCapacity(long capacity) {
+        if (ENABLED && capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity : " + capacity + " exceeds " + MAX_CAPACITY + " with compressed pointers.");
+        }
+    }
+
+    /**
+     * 开启压缩时 检查地址能否被编码 (free / move / 回收集的入口)
+     */
+    static void check(long pointer) {
+        if (ENABLED) encode(pointer);
+    }
+}
@@ -0,0 +1,151 @@
+package org.weishen.gc_.heap;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 单个分代的碎片统计
+ * <p>
+ * 由回收集在空闲块出现(add)和消失(remove)时增量维护 (切分 合并 清空) 写入发生在分代锁内
+ * 读取不需要任何锁 都是 O(1) 监控线程可以随时轮询
+ * <p>
+ * - blockCount            : 空闲块的数量
+ * - largestFreeBlock      : 最大的空闲块 回收集一次能满足的最大分配
+ * - histogram             : 按 2 的幂分桶的空闲块数量 第 k 桶为 [2^k, 2^(k+1))
+ * - externalFragmentation : 1 - largestFreeBlock / freeBytes 0 表示所有空闲空间连成一块
+ * - alignmentLoss         : 分代中的对象 size 对齐到 aligningSize 多用的字节 (每个块的值记录在对象头 see@ObjectHeader)
+ *                           写入时增加 释放时减少 拷贝/晋升时转到目标代 分代重置时清零
+ * <p>
+ * 空闲块的边界由回收集决定: 伙伴系统统计的是伙伴块 相邻但不是伙伴的块分开统计
+ */
+public class FragmentationStats {
+
+    public static final int BUCKETS = 64;
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    /**
+     * 空闲块大小 -> 数量 只在分代锁内访问 用于维护 largestFreeBlock
+     */
+    private final TreeMap<Long, Long> sizes = new TreeMap<>();
+
+    private volatile long blockCount;
+
+    private volatile long freeBytes;
+
+    private volatile long largestFreeBlock;
+
+    private final AtomicLong alignmentLoss = new AtomicLong();
+
+    /**
+     * 新的空闲块
+     */
+    void add(long size) {
+        histogram.incrementAndGet(bucket(size));
+        sizes.merge(size, 1L, Long::sum);
+        blockCount++;
+        freeBytes += size;
+        if (size > largestFreeBlock) largestFreeBlock = size;
+    }
+
+    /**
+     * 空闲块被分配 切分或者合并
+     */
+    void remove(long size) {
+        histogram.decrementAndGet(bucket(size));
+        Long count = sizes.get(size);
+        assert count != null;
+        if (count == 1) {
+            sizes.remove(size);
+            if (size == largestFreeBlock) {
+                Map.Entry<Long, Long> last = sizes.lastEntry();
+                largestFreeBlock = last == null ? 0 : last.getKey();
+            }
+        } else {
+            sizes.put(size, count - 1);
+        }
+        blockCount--;
+        freeBytes -= size;
+    }
+
+    /**
+     * 回收集被清空 对齐损失属于分代中的对象 保留
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) histogram.set(i, 0);
+        sizes.clear();
+        blockCount = 0;
+        freeBytes = 0;
+        largestFreeBlock = 0;
+    }
+
+    /**
+     * @param bytes 释放时为负数
+     */
+    void addAlignmentLoss(long bytes) {
+        alignmentLoss.addAndGet(bytes);
+    }
+
+    /**
+     * 分代被整体重置 其中的对象都不存在了
+     */
+    void resetAlignmentLoss() {
+        alignmentLoss.set(0);
+    }
+
+    private static int bucket(long size) {
+        return 63 - Long.numberOfLeadingZeros(size);
+    }
+
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    public long getFreeBytes() {
+        return freeBytes;
+    }
+
+    public long getLargestFreeBlock() {
+        return largestFreeBlock;
+    }
+
+    /**
+     * 第 k 个元素为大小在 [2^k, 2^(k+1)) 的空闲块数量
+     */
+    public long[] getHistogram() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) copy[i] = histogram.get(i);
+        return copy;
+    }
+
+    public double getExternalFragmentation() {
+        long free = freeBytes;
+        return free <= 0 ? 0 : 1 - (double) Math.min(largestFreeBlock, free) / free;
+    }
+
+    public long getAlignmentLoss() {
+        return alignmentLoss.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("blocks: ").append(blockCount)
+                .append(", free: ").append(freeBytes)
+                .append(", largest: ").append(largestFreeBlock)
+                .append(", external: ").append(String.format("%.2f", getExternalFragmentation()))
+                .append(", alignmentLoss: ").append(getAlignmentLoss())
+                .append(", histogram: {");
+        boolean first = true;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = histogram.get(i);
+            if (count == 0) continue;
+            if (!first) sb.append(", ");
+            sb.append(1L << i).append("+: ").append(count);
+            first = false;
+        }
+        return sb.append('}').toString();
+    }
+}
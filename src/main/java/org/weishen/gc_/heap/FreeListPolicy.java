@@ -0,0 +1,42 @@
+package org.weishen.gc_.heap;
+
+import org.weishen.gc_.heap.inter.FreeList;
+
+/**
+ * 回收集的复用策略
+ * <p>
+ * - FIRST_FIT     : 地址有序的跳表 按跨度最大值查找第一个足够大的块 O(log n) see@SkipListFreeList
+ * - SEGREGATED_FIT: 8字节分级的空闲链表 + 大块树 O(1) / O(log n) see@SegregatedFreeList
+ * - BITMAP        : 每8字节1位的位图 first-fit 按字扫描 合并是隐式的 元数据固定 1/64 see@BitmapFreeList
+ * - BUDDY         : 伙伴系统 管理整个分代 切分与合并都是位图上的位运算 see@BuddyFreeList
+ */
+public enum FreeListPolicy {
+
+    FIRST_FIT,
+
+    SEGREGATED_FIT,
+
+    BITMAP,
+
+    BUDDY;
+
+    /**
+     * 为 [base, limit) 的分代创建回收集
+     */
+    public FreeList create(long base, long limit) {
+        return switch (this) {
+            case FIRST_FIT -> new SkipListFreeList();
+            case SEGREGATED_FIT -> new SegregatedFreeList();
+            case BITMAP -> new BitmapFreeList(base, limit);
+            case BUDDY -> new BuddyFreeList(base, limit);
+        };
+    }
+
+    /**
+     * 回收集是否管理整个分代
+     * 是: 初始化时整个分代都归还到回收集 分配指针直接指向上边界 不再使用 bump-pointer
+     */
+    public boolean ownsGeneration() {
+        return this == BUDDY;
+    }
+}
@@ -0,0 +1,118 @@
+package org.weishen.gc_.heap;
+
+/**
+ * 堆的可选配置
+ * <p>
+ * - tlabSize           : 每个线程的tlab大小(会对齐到8) 0 表示关闭tlab
+ * - lockFreeAllocation : 是否开启无锁的 CAS bump-pointer 分配
+ * - chunkShift         : 分块储存的堆 每个 chunk 的大小为 1 << chunkShift (3 - 30)
+ * - freeListPolicy     : 回收集的复用策略 see@FreeListPolicy
+ * - zeroingPolicy      : 已释放内存的清零策略 see@ZeroingPolicy
+ * - humongousThreshold : 超过此大小的年轻代对象直接分配到老年代 <= 0 表示半个 survivor
+ * - regionShift        : 分区堆 每个分区的大小为 1 << regionShift (12 - 30) see@JVMRegionGenerationHeap
+ * - pauseTimeGoalMillis: 分区堆 疏散的停顿目标 决定回收集中老年代分区的数量
+ * - maxTenuringThreshold: minor GC 晋升阈值的上限 年龄达到阈值的对象晋升到老年代 (1 - 15) 分区堆中是固定的晋升阈值
+ * - targetSurvivorRatio: minor GC 之后 survivor 的期望占用比例(%) 动态的晋升阈值以此为目标
+ */
+public class HeapConfig {
+
+    private int tlabSize = AbstractGenerationHeap.DEFAULT_TLAB_SIZE;
+
+    private boolean lockFreeAllocation = false;
+
+    private int chunkShift = AbstractChunkedGenerationHeap.DEFAULT_CHUNK_SHIFT;
+
+    private FreeListPolicy freeListPolicy = FreeListPolicy.FIRST_FIT;
+
+    private ZeroingPolicy zeroingPolicy = ZeroingPolicy.ZERO_ON_FREE;
+
+    private int humongousThreshold = 0;
+
+    private int regionShift = JVMRegionGenerationHeap.DEFAULT_REGION_SHIFT;
+
+    private long pauseTimeGoalMillis = JVMRegionGenerationHeap.DEFAULT_PAUSE_TIME_GOAL_MILLIS;
+
+    private int maxTenuringThreshold = AbstractGenerationHeap.MAX_TENURING_THRESHOLD;
+
+    private int targetSurvivorRatio = AbstractGenerationHeap.DEFAULT_TARGET_SURVIVOR_RATIO;
+
+    public int getTlabSize() {
+        return tlabSize;
+    }
+
+    public void setTlabSize(int tlabSize) {
+        this.tlabSize = tlabSize;
+    }
+
+    public boolean isLockFreeAllocation() {
+        return lockFreeAllocation;
+    }
+
+    public void setLockFreeAllocation(boolean lockFreeAllocation) {
+        this.lockFreeAllocation = lockFreeAllocation;
+    }
+
+    public int getChunkShift() {
+        return chunkShift;
+    }
+
+    public void setChunkShift(int chunkShift) {
+        this.chunkShift = chunkShift;
+    }
+
+    public FreeListPolicy getFreeListPolicy() {
+        return freeListPolicy;
+    }
+
+    public void setFreeListPolicy(FreeListPolicy freeListPolicy) {
+        this.freeListPolicy = freeListPolicy;
+    }
+
+    public ZeroingPolicy getZeroingPolicy() {
+        return zeroingPolicy;
+    }
+
+    public void setZeroingPolicy(ZeroingPolicy zeroingPolicy) {
+        this.zeroingPolicy = zeroingPolicy;
+    }
+
+    public int getHumongousThreshold() {
+        return humongousThreshold;
+    }
+
+    public void setHumongousThreshold(int humongousThreshold) {
+        this.humongousThreshold = humongousThreshold;
+    }
+
+    public int getRegionShift() {
+        return regionShift;
+    }
+
+    public void setRegionShift(int regionShift) {
+        this.regionShift = regionShift;
+    }
+
+    public long getPauseTimeGoalMillis() {
+        return pauseTimeGoalMillis;
+    }
+
+    public void setPauseTimeGoalMillis(long pauseTimeGoalMillis) {
+        this.pauseTimeGoalMillis = pauseTimeGoalMillis;
+    }
+
+    public int getMaxTenuringThreshold() {
+        return maxTenuringThreshold;
+    }
+
+    public void setMaxTenuringThreshold(int maxTenuringThreshold) {
+        this.maxTenuringThreshold = maxTenuringThreshold;
+    }
+
+    public int getTargetSurvivorRatio() {
+        return targetSurvivorRatio;
+    }
+
+    public void setTargetSurvivorRatio(int targetSurvivorRatio) {
+        this.targetSurvivorRatio = targetSurvivorRatio;
+    }
+}
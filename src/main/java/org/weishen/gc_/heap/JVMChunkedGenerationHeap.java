@@ -0,0 +1,76 @@
+package org.weishen.gc_.heap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * 以多个 byte[] (chunk) 储存的堆 用来模拟超过 2GB (8GB - 64GB) 的堆
+ * <p>
+ * 指针与 chunk 边界的处理见 @AbstractChunkedGenerationHeap
+ */
+public class JVMChunkedGenerationHeap extends AbstractChunkedGenerationHeap {
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final byte[][] chunks;
+
+    /**
+     * 创建JVM堆内存区域。
+     *
+     * @param capacity 堆的最大容量，自动调整为8的倍数以避免溢出
+     */
+    public JVMChunkedGenerationHeap(long capacity) {
+        this(capacity, new HeapConfig());
+    }
+
+    /**
+     * 创建JVM堆内存区域。
+     *
+     * @param capacity 堆的最大容量，自动调整为8的倍数以避免溢出
+     * @param config   堆的可选配置 see@HeapConfig
+     */
+    public JVMChunkedGenerationHeap(long capacity, HeapConfig config) {
+        super(capacity, config);
+        this.chunks = new byte[chunkCount][];
+        for (int i = 0; i < chunkCount; i++) {
+            this.chunks[i] = new byte[chunkLength(i)];
+        }
+    }
+
+    @Override
+    protected void fillChunk(int chunk, int offset, int length) {
+        Arrays.fill(chunks[chunk], offset, offset + length, (byte) 0);
+    }
+
+    @Override
+    protected void writeChunk(int chunk, int offset, byte[] src, int srcOffset, int length) {
+        System.arraycopy(src, srcOffset, chunks[chunk], offset, length);
+    }
+
+    @Override
+    protected void writeChunkByte(int chunk, int offset, byte value) {
+        chunks[chunk][offset] = value;
+    }
+
+    @Override
+    protected void readChunk(int chunk, int offset, byte[] des, int desOffset, int length) {
+        System.arraycopy(chunks[chunk], offset, des, desOffset, length);
+    }
+
+    @Override
+    protected byte readChunkByte(int chunk, int offset) {
+        return chunks[chunk][offset];
+    }
+
+    @Override
+    protected boolean compareAndSetChunkLong(int chunk, int offset, long expected, long value) {
+        return LONG.compareAndSet(chunks[chunk], offset, expected, value);
+    }
+
+    @Override
+    protected void copyChunk(int srcChunk, int srcOffset, int desChunk, int desOffset, int length) {
+        System.arraycopy(chunks[srcChunk], srcOffset, chunks[desChunk], desOffset, length);
+    }
+}
@@ -0,0 +1,126 @@
+package org.weishen.gc_.heap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 储存在堆外(direct memory)的堆
+ * <p>
+ * 多 GB 的 byte[] 会进入宿主JVM的老年代 宿主的GC需要扫描和复制它
+ * 这里每个 chunk 是一个 ByteBuffer.allocateDirect 的堆外缓冲 不会给宿主的GC带来负担
+ * fill 和 copy 都是堆外内存的批量操作 (ByteBuffer.put(int, ByteBuffer, int, int))
+ * <p>
+ * 注意: 堆外内存受 -XX:MaxDirectMemorySize 限制
+ * 指针与 chunk 边界的处理见 @AbstractChunkedGenerationHeap
+ */
+public class JVMDirectGenerationHeap extends AbstractChunkedGenerationHeap {
+
+    /**
+     * 置0 时使用的源 一次最多复制 ZERO_SIZE 个字节
+     */
+    private static final int ZERO_SIZE = 64 * 1024;
+
+    private static final ByteBuffer ZERO = ByteBuffer.allocateDirect(ZERO_SIZE);
+
+    /**
+     * 堆外缓冲的起始地址按页对齐 8 字节对齐的 offset 支持原子访问
+     */
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    protected final ByteBuffer[] chunks;
+
+    /**
+     * 创建JVM堆内存区域。
+     *
+     * @param capacity 堆的最大容量，自动调整为8的倍数以避免溢出
+     */
+    public JVMDirectGenerationHeap(long capacity) {
+        this(capacity, new HeapConfig());
+    }
+
+    /**
+     * 创建JVM堆内存区域。
+     *
+     * @param capacity 堆的最大容量，自动调整为8的倍数以避免溢出
+     * @param config   堆的可选配置 see@HeapConfig
+     */
+    public JVMDirectGenerationHeap(long capacity, HeapConfig config) {
+        this(capacity, config, (chunk, position, length) -> ByteBuffer.allocateDirect(length));
+    }
+
+    /**
+     * 由子类决定每个 chunk 的缓冲从哪里来 (例如映射文件 see@JVMMappedGenerationHeap)
+     */
+    protected JVMDirectGenerationHeap(long capacity, HeapConfig config, ChunkFactory chunkFactory) {
+        super(capacity, config);
+        this.chunks = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            try {
+                this.chunks[i] = chunkFactory.create(i, (long) i << chunkShift, chunkLength(i));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * 创建第 chunk 个块的缓冲
+     */
+    @FunctionalInterface
+    protected interface ChunkFactory {
+        /**
+         * @param chunk    块的下标
+         * @param position 块在整个堆中的起始地址
+         * @param length   块的大小
+         */
+        ByteBuffer create(int chunk, long position, int length) throws IOException;
+    }
+
+    @Override
+    protected void fillChunk(int chunk, int offset, int length) {
+        ByteBuffer buffer = chunks[chunk];
+        while (length > 0) {
+            int part = Math.min(length, ZERO_SIZE);
+            buffer.put(offset, ZERO, 0, part);
+            offset += part;
+            length -= part;
+        }
+    }
+
+    @Override
+    protected void writeChunk(int chunk, int offset, byte[] src, int srcOffset, int length) {
+        chunks[chunk].put(offset, src, srcOffset, length);
+    }
+
+    @Override
+    protected void writeChunkByte(int chunk, int offset, byte value) {
+        chunks[chunk].put(offset, value);
+    }
+
+    @Override
+    protected void readChunk(int chunk, int offset, byte[] des, int desOffset, int length) {
+        chunks[chunk].get(offset, des, desOffset, length);
+    }
+
+    @Override
+    protected byte readChunkByte(int chunk, int offset) {
+        return chunks[chunk].get(offset);
+    }
+
+    @Override
+    protected boolean compareAndSetChunkLong(int chunk, int offset, long expected, long value) {
+        return LONG.compareAndSet(chunks[chunk], offset, expected, value);
+    }
+
+    /**
+     * 同一个缓冲内重叠的拷贝 put 会保证先复制到中间位置 语义和 System.arraycopy 一致
+     */
+    @Override
+    protected void copyChunk(int srcChunk, int srcOffset, int desChunk, int desOffset, int length) {
+        chunks[desChunk].put(desOffset, chunks[srcChunk], srcOffset, length);
+    }
+}
@@ -0,0 +1,212 @@
+package org.weishen.gc_.heap;
+
+import org.weishen.gc_.heap.inter.FreeList;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 储存在映射文件(MappedByteBuffer)中的堆 支持快速的热重启
+ * <p>
+ * 堆的字节直接映射到本地文件 内存管理的状态(分配指针 回收集)写在一个很小的旁路文件 (file + ".meta") 中
+ * 重新打开时 字节通过 page cache 按需加载 只需要读取旁路文件就可以还原整个堆 不需要重新执行分配
+ * <p>
+ * 旁路文件格式 (DataOutputStream):
+ * magic(int) version(int) capacity(long) chunkShift(int)
+ * classCount(int) [className(UTF)] * classCount       (class id 从 1 开始 see@ClassTable)
+ * fromSurvivor(UTF) tenuringThreshold(int)
+ * 每个代: name(UTF) top(long) freeSize(long) blockCount(int) [point(long) size(long)] * blockCount
+ * dirtyCount(int) [start(long) end(long)] * dirtyCount
+ * <p>
+ * 脏区间(已释放还没有清零 see@ZeroingPolicy)也需要保存 否则还原后会把没有清零的块当作干净的分配出去
+ * 类表同样需要保存 class id 按第一次使用的顺序分配 不保存的话还原后对象头中的 class id 没有意义
+ * from-survivor 同样需要保存 否则奇数次 minor GC 之后还原 下一次 minor GC 会把对象拷贝到还有旧数据的 survivor
+ * <p>
+ * 注意:
+ * 1: checkpoint() 需要在STW下调用 它会先退役所有tlab 再把状态写入旁路文件
+ * 2: 只有堆本身会被还原 Java中的 SimulatedObj 和 GC图 不属于堆的状态
+ * 3: 旁路文件先写入临时文件再替换 checkpoint 中途失败不会破坏上一次的状态
+ */
+public class JVMMappedGenerationHeap extends JVMDirectGenerationHeap {
+
+    private static final int MAGIC = 0x4A564D48; // "JVMH"
+
+    private static final int VERSION = 4;
+
+    private static final String META_SUFFIX = ".meta";
+
+    private final Path file;
+
+    private final Path metaFile;
+
+    private final FileChannel channel;
+
+    /**
+     * 打开(或创建)一个映射文件的堆 如果旁路文件存在并且和当前配置匹配 则还原上一次 checkpoint 的状态
+     *
+     * @param file     堆文件
+     * @param capacity 堆的最大容量，自动调整为8的倍数以避免溢出
+     */
+    public JVMMappedGenerationHeap(Path file, long capacity) throws IOException {
+        this(file, capacity, new HeapConfig());
+    }
+
+    /**
+     * @param file     堆文件
+     * @param capacity 堆的最大容量，自动调整为8的倍数以避免溢出
+     * @param config   堆的可选配置 see@HeapConfig
+     */
+    public JVMMappedGenerationHeap(Path file, long capacity, HeapConfig config) throws IOException {
+        this(file, FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                capacity, config);
+    }
+
+    private JVMMappedGenerationHeap(Path file, FileChannel channel, long capacity, HeapConfig config) throws IOException {
+        // READ_WRITE 映射超过文件大小时 文件会自动扩展
+        super(capacity, config,
+                (chunk, position, length) -> channel.map(FileChannel.MapMode.READ_WRITE, position, length));
+        this.file = file;
+        this.metaFile = file.resolveSibling(file.getFileName() + META_SUFFIX);
+        this.channel = channel;
+        if (Files.exists(metaFile)) {
+            restore();
+        }
+    }
+
+    /**
+     * 从旁路文件还原分配指针和回收集
+     */
+    private void restore() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(metaFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("meta file : " + metaFile + " ,illegality.");
+            }
+            long storedCapacity = in.readLong();
+            int storedChunkShift = in.readInt();
+            if (storedCapacity != capacity || storedChunkShift != chunkShift) {
+                throw new IOException("meta file : " + metaFile + " does not match capacity : " + capacity + " ,chunkShift : " + chunkShift);
+            }
+            restoreClassTable(in);
+            String fromSurvivor = in.readUTF();
+            int tenuringThreshold = in.readInt();
+            try {
+                restoreSurvivorState(fromSurvivor, tenuringThreshold);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("meta file : " + metaFile + " ,illegality.", e);
+            }
+            for (int i = 0; i < assignedAddressPointers.size(); i++) {
+                String generation = in.readUTF();
+                long top = in.readLong();
+                long freeSize = in.readLong();
+                int blockCount = in.readInt();
+                assignedAddressPointers.get(generation).set(top);
+                freedMemorySizeMap.get(generation).set(freeSize);
+                FreeList freeList = freedMemoryMaps.get(generation);
+                // 管理整个分代的回收集(buddy)在构造时已经放入了初始空间 以旁路文件为准
+                freeList.clear();
+                for (int j = 0; j < blockCount; j++) {
+                    long point = in.readLong();
+                    freeList.free(point, in.readLong());
+                }
+                int dirtyCount = in.readInt();
+                for (int j = 0; j < dirtyCount; j++) {
+                    long start = in.readLong();
+                    markDirty(generation, start, in.readLong());
+                }
+            }
+        }
+        // 碎片统计不保存 对齐损失从对象头重新计算
+        recountAlignmentLoss();
+        System.out.println("Restore heap from : " + file + ", " + getHeapDetails());
+    }
+
+    /**
+     * 类表按 id 的顺序还原 类在当前的类加载器中加载
+     */
+    private void restoreClassTable(DataInputStream in) throws IOException {
+        int classCount = in.readInt();
+        List<Class<?>> classes = new ArrayList<>(classCount + 1);
+        classes.add(Void.class);
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        for (int i = 0; i < classCount; i++) {
+            String name = in.readUTF();
+            try {
+                classes.add(Class.forName(name, false, loader));
+            } catch (ClassNotFoundException e) {
+                throw new IOException("meta file : " + metaFile + " ,class : " + name + " not found.", e);
+            }
+        }
+        try {
+            ClassTable.restore(classes);
+        } catch (IllegalStateException e) {
+            throw new IOException("meta file : " + metaFile + " does not match the class table.", e);
+        }
+    }
+
+    /**
+     * 把堆的字节刷回文件 并把内存管理的状态写入旁路文件
+     * 需要在STW下调用
+     */
+    public void checkpoint() throws IOException {
+        retireTlabs();
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+        Path tmp = metaFile.resolveSibling(metaFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(capacity);
+            out.writeInt(chunkShift);
+            List<Class<?>> classes = ClassTable.snapshot();
+            out.writeInt(classes.size() - 1);
+            for (Class<?> type : classes.subList(1, classes.size())) {
+                out.writeUTF(type.getName());
+            }
+            out.writeUTF(getFromSurvivor());
+            out.writeInt(getTenuringThreshold());
+            for (String generation : new String[]{EDEN_, SV1_, SV2_, OLD_}) {
+                synchronized (getLock(generation)) {
+                    out.writeUTF(generation);
+                    out.writeLong(assignedAddressPointers.get(generation).get());
+                    out.writeLong(freedMemorySizeMap.get(generation).get());
+                    FreeList freeList = freedMemoryMaps.get(generation);
+                    List<long[]> blocks = new ArrayList<>();
+                    freeList.forEach((point, size) -> blocks.add(new long[]{point, size}));
+                    out.writeInt(blocks.size());
+                    for (long[] block : blocks) {
+                        out.writeLong(block[0]);
+                        out.writeLong(block[1]);
+                    }
+                    TreeMap<Long, Long> dirty = dirtyRanges.get(generation);
+                    out.writeInt(dirty.size());
+                    for (Map.Entry<Long, Long> range : dirty.entrySet()) {
+                        out.writeLong(range.getKey());
+                        out.writeLong(range.getValue());
+                    }
+                }
+            }
+        }
+        Files.move(tmp, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 停止后台预清零 checkpoint 并关闭文件 之后不能再使用此堆
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        checkpoint();
+        channel.close();
+    }
+}
@@ -0,0 +1,738 @@
+package org.weishen.gc_.heap;
+
+import org.weishen.gc_.heap.inter.Generation;
+import org.weishen.gc_.heap.inter.HeapMemory;
+import org.weishen.gc_.heap.inter.SimulatedHeap;
+import org.weishen.gc_.obj_.inter.SimulatedObj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * 分区(region)的堆 参考 G1
+ * <p>
+ * AbstractGenerationHeap 把整个堆切成固定的四段 每个代的大小在构造时就确定 整个老年代只有一把锁
+ * 这里把堆切成大小相同的分区 每个分区可以是 eden, survivor, old, humongous 或空闲
+ * <p>
+ * 1: 弹性的分代
+ * 代不再是固定的地址范围 而是一组分区 需要时从空闲池中取出一个分区 分区整体回收后回到空闲池
+ * 只有 eden 有上限 (maxEdenRegions 约为堆的 1/3 * 8/10 和分代堆的比例一致) eden 用尽即OOM
+ * 分区内释放的空间不复用 free 不能缓解 eden 的OOM 只有GC之后的疏散能归还分区 AppContext 分配失败时触发GC后重试(see@AppContext#minorGc)
+ * 直接使用堆的调用方需要在 eden 的OOM之后自己调用GC和 evacuate
+ * <p>
+ * 2: 分区锁
+ * 每个代有一把分配锁 只保护当前分配分区的选择 分区内的 bump 和释放只持有分区自己的锁
+ * 老年代的释放分散在各个分区上 不再串行在一把锁上
+ * 锁的顺序: 分配锁 -> 分区锁 -> 空闲池(freeRegions)
+ * <p>
+ * 3: 巨型对象(humongous)
+ * 大于半个分区的对象直接占据连续的分区 释放时整体归还
+ * <p>
+ * 4: 疏散(evacuation)
+ * 分区内释放的空间不复用 只记为 garbage 整个分区都是垃圾时直接归还
+ * GC 之后 evacuate() 选择回收集(collection set): 所有的年轻代分区 加上垃圾最多的老年代分区
+ * 老年代分区按垃圾从多到少加入 直到预测的耗时超过停顿目标 (pauseTimeGoal)
+ * 预测的耗时 = 存活字节 * 拷贝速度 + 每个分区的固定开销 拷贝速度在每次疏散后按实际耗时更新
+ * 存活对象被拷贝到新的分区 更新指针 原分区整体归还
+ * 年轻代分区中的对象年龄加一 达到晋升阈值(固定为 config.maxTenuringThreshold 不做动态调整)时拷贝到老年代 否则拷贝到 survivor
+ * 老年代分区中的对象拷贝到老年代
+ * 没有空闲分区时疏散失败 失败的分区和回收集中剩下的年轻代分区原地转为老年代
+ * <p>
+ * 5: 清零
+ * 分区归还时只记录写过的范围(dirtyTop) 再次被取出时才清零 每个字节只会被清零一次
+ * <p>
+ * 分区:
+ * [E][E][O][F][S][H][H+][O][F]...
+ */
+public class JVMRegionGenerationHeap implements SimulatedHeap, Generation, HeapMemory {
+    private static final Logger logger = Logger.getLogger(JVMRegionGenerationHeap.class.getName());
+
+    /**
+     * 默认每个分区 1MB
+     */
+    public static final int DEFAULT_REGION_SHIFT = 20;
+
+    public static final long DEFAULT_PAUSE_TIME_GOAL_MILLIS = 200;
+
+    /**
+     * 预测疏散耗时时 每个分区的固定开销
+     */
+    private static final long REGION_FIXED_COST_NANOS = 10_000;
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final long capacity;
+
+    private final int regionShift;
+
+    private final int regionSize;
+
+    private final long regionMask;
+
+    private final Region[] regions;
+
+    private final byte[][] memory;
+
+    /**
+     * 空闲分区 需要持有自身的锁访问 (regionCounts 同样)
+     */
+    private final BitSet freeRegions = new BitSet();
+
+    private final int[] regionCounts = new int[Region.Type.values().length];
+
+    private final int maxEdenRegions;
+
+    /**
+     * 每个代当前的分配分区 需要持有对应的分配锁
+     */
+    private final Region[] allocRegions = new Region[Region.Type.values().length];
+
+    private final Object[] allocLocks = new Object[Region.Type.values().length];
+
+    private final long pauseTimeGoalNanos;
+
+    /**
+     * 晋升阈值 疏散时年龄达到阈值的年轻代对象拷贝到老年代
+     */
+    private final int tenuringThreshold;
+
+    /**
+     * 拷贝速度的预测(纳秒/字节) 每次疏散后按实际耗时更新
+     */
+    private double copyNanosPerByte = 1.0;
+
+    /**
+     * @param capacity 堆的最大容量 自动调整为分区大小的倍数
+     */
+    public JVMRegionGenerationHeap(long capacity) {
+        this(capacity, new HeapConfig());
+    }
+
+    /**
+     * @param capacity 堆的最大容量 自动调整为分区大小的倍数
+     * @param config   堆的可选配置 分区大小为 1 << config.regionShift (12 - 30)
+     */
+    public JVMRegionGenerationHeap(long capacity, HeapConfig config) {
+        int regionShift = config.getRegionShift();
+        assert regionShift >= 12 && regionShift <= 30;
+        this.regionShift = regionShift;
+        this.regionSize = 1 << regionShift;
+        this.regionMask = regionSize - 1;
+        int regionCount = (int) (capacity >>> regionShift);
+        if (regionCount < 3) {
+            throw new IllegalArgumentException("capacity : " + capacity + " is less than 3 regions of " + regionSize);
+        }
+        this.capacity = (long) regionCount << regionShift;
+        CompressedPointers.checkCapacity(this.capacity);
+        this.regions = new Region[regionCount];
+        this.memory = new byte[regionCount][];
+        for (int i = 0; i < regionCount; i++) {
+            regions[i] = new Region(i, (long) i << regionShift);
+            memory[i] = new byte[regionSize];
+        }
+        for (int i = 0; i < allocLocks.length; i++) {
+            allocLocks[i] = new Object();
+        }
+        freeRegions.set(0, regionCount);
+        regionCounts[Region.Type.FREE.ordinal()] = regionCount;
+        this.maxEdenRegions = Math.max(1, regionCount / 3 * 8 / 10);
+        this.pauseTimeGoalNanos = config.getPauseTimeGoalMillis() * 1_000_000;
+        assert config.getMaxTenuringThreshold() >= 1 && config.getMaxTenuringThreshold() <= AbstractGenerationHeap.MAX_TENURING_THRESHOLD;
+        this.tenuringThreshold = config.getMaxTenuringThreshold();
+        System.out.println("Regions: " + regionCount + ", Region Size: " + regionSize + ", Max Eden Regions: " + maxEdenRegions);
+    }
+
+    /***************Storage***************/
+
+    private void write(long pointer, byte[] src, int offset, int length) {
+        while (length > 0) {
+            int region = (int) (pointer >>> regionShift);
+            int regionOffset = (int) (pointer & regionMask);
+            int part = Math.min(length, regionSize - regionOffset);
+            System.arraycopy(src, offset, memory[region], regionOffset, part);
+            pointer += part;
+            offset += part;
+            length -= part;
+        }
+    }
+
+    @Override
+    public void putByte(long pointer, byte value) {
+        memory[(int) (pointer >>> regionShift)][(int) (pointer & regionMask)] = value;
+    }
+
+    @Override
+    public void putBytes(long pointer, byte[] src, int offset, int length) {
+        write(pointer, src, offset, length);
+    }
+
+    private void read(long pointer, byte[] des, int offset, int length) {
+        while (length > 0) {
+            int region = (int) (pointer >>> regionShift);
+            int regionOffset = (int) (pointer & regionMask);
+            int part = Math.min(length, regionSize - regionOffset);
+            System.arraycopy(memory[region], regionOffset, des, offset, part);
+            pointer += part;
+            offset += part;
+            length -= part;
+        }
+    }
+
+    @Override
+    public byte getByte(long pointer) {
+        return memory[(int) (pointer >>> regionShift)][(int) (pointer & regionMask)];
+    }
+
+    @Override
+    public void getBytes(long pointer, byte[] des, int offset, int length) {
+        read(pointer, des, offset, length);
+    }
+
+    @Override
+    public boolean compareAndSetLong(long pointer, long expected, long value) {
+        assert (pointer & 7) == 0;
+        return LONG.compareAndSet(memory[(int) (pointer >>> regionShift)], (int) (pointer & regionMask), expected, value);
+    }
+
+    /**
+     * 普通对象不会跨越分区 直接拷贝 跨越分区的(巨型对象)经过临时数组
+     */
+    private void copy(long srcPoint, long desPoint, int size) {
+        int srcOffset = (int) (srcPoint & regionMask);
+        int desOffset = (int) (desPoint & regionMask);
+        if (srcOffset + size <= regionSize && desOffset + size <= regionSize) {
+            System.arraycopy(memory[(int) (srcPoint >>> regionShift)], srcOffset,
+                    memory[(int) (desPoint >>> regionShift)], desOffset, size);
+            return;
+        }
+        byte[] tmp = new byte[size];
+        read(srcPoint, tmp, 0, size);
+        write(desPoint, tmp, 0, size);
+    }
+
+    /***************Region***************/
+
+    private Region regionOf(long point) {
+        long index = point >>> regionShift;
+        if (point < 0 || index >= regions.length) {
+            throw new IllegalArgumentException("point : " + point + " ,illegality.");
+        }
+        return regions[(int) index];
+    }
+
+    private Region.Type typeOf(String generation) {
+        return switch (generation) {
+            case AbstractGenerationHeap.EDEN_ -> Region.Type.EDEN;
+            case AbstractGenerationHeap.SV1_, AbstractGenerationHeap.SV2_ -> Region.Type.SURVIVOR;
+            case AbstractGenerationHeap.OLD_ -> Region.Type.OLD;
+            default -> throw new IllegalArgumentException("generation : " + generation + " ,illegality.");
+        };
+    }
+
+    /**
+     * 在 type 代中分配 当前分配分区用尽时从空闲池中取一个新的分区
+     */
+    private long allocate(int normalizedSize, Region.Type type) throws OutOfMemoryError {
+        assert normalizedSize > 0 && (normalizedSize & 7) == 0;
+        if (normalizedSize > regionSize / 2) {
+            return allocateHumongous(normalizedSize);
+        }
+        synchronized (allocLocks[type.ordinal()]) {
+            Region region = allocRegions[type.ordinal()];
+            if (region != null) {
+                long pointer = bump(region, normalizedSize);
+                if (pointer >= 0) return pointer;
+                allocRegions[type.ordinal()] = null;
+                retire(region);
+            }
+            region = acquire(type);
+            allocRegions[type.ordinal()] = region;
+            return bump(region, normalizedSize);
+        }
+    }
+
+    private long bump(Region region, int size) {
+        synchronized (region) {
+            if (region.top + size > regionSize) return -1;
+            long pointer = region.getStart() + region.top;
+            region.top += size;
+            return pointer;
+        }
+    }
+
+    /**
+     * 分区不再是当前分配分区 如果已经全部是垃圾直接归还
+     */
+    private void retire(Region region) {
+        synchronized (region) {
+            region.retired = true;
+            if (region.garbage == region.top) {
+                release(region);
+            }
+        }
+    }
+
+    /**
+     * 从空闲池中取出地址最小的分区
+     */
+    private Region acquire(Region.Type type) throws OutOfMemoryError {
+        Region region;
+        synchronized (freeRegions) {
+            if (type == Region.Type.EDEN && regionCounts[Region.Type.EDEN.ordinal()] >= maxEdenRegions) {
+                throw new OutOfMemoryError("Heap space is full in eden_ generation, regions : " + maxEdenRegions);
+            }
+            int index = freeRegions.nextSetBit(0);
+            if (index < 0) {
+                throw new OutOfMemoryError("Heap space is full, no free region for " + type);
+            }
+            freeRegions.clear(index);
+            region = regions[index];
+            region.type = type;
+            region.retired = false;
+            regionCounts[Region.Type.FREE.ordinal()]--;
+            regionCounts[type.ordinal()]++;
+        }
+        clean(region);
+        return region;
+    }
+
+    /**
+     * 巨型对象 占据连续的空闲分区 first-fit
+     */
+    private long allocateHumongous(int normalizedSize) throws OutOfMemoryError {
+        int count = (int) (((long) normalizedSize + regionMask) >>> regionShift);
+        Region first;
+        synchronized (freeRegions) {
+            int from = freeRegions.nextSetBit(0);
+            while (from >= 0 && freeRegions.nextClearBit(from) - from < count) {
+                from = freeRegions.nextSetBit(freeRegions.nextClearBit(from));
+            }
+            if (from < 0) {
+                throw new OutOfMemoryError("Heap space is full, no " + count + " contiguous regions for humongous object : " + normalizedSize);
+            }
+            freeRegions.clear(from, from + count);
+            for (int i = 0; i < count; i++) {
+                Region region = regions[from + i];
+                region.type = i == 0 ? Region.Type.HUMONGOUS : Region.Type.HUMONGOUS_CONTINUES;
+                region.retired = true;
+                region.top = (int) Math.min(regionSize, normalizedSize - ((long) i << regionShift));
+                regionCounts[Region.Type.FREE.ordinal()]--;
+                regionCounts[region.type.ordinal()]++;
+            }
+            first = regions[from];
+            first.humongousRegions = count;
+        }
+        for (int i = 0; i < count; i++) {
+            clean(regions[first.getIndex() + i]);
+        }
+        return first.getStart();
+    }
+
+    /**
+     * 清零上一次使用时写过的部分
+     */
+    private void clean(Region region) {
+        if (region.dirtyTop > 0) {
+            Arrays.fill(memory[region.getIndex()], 0, region.dirtyTop, (byte) 0);
+            region.dirtyTop = 0;
+        }
+    }
+
+    /**
+     * 把分区归还到空闲池
+     */
+    private void release(Region region) {
+        synchronized (freeRegions) {
+            regionCounts[region.type.ordinal()]--;
+            regionCounts[Region.Type.FREE.ordinal()]++;
+            region.dirtyTop = Math.max(region.dirtyTop, region.top);
+            region.top = 0;
+            region.garbage = 0;
+            region.humongousRegions = 0;
+            region.retired = true;
+            region.type = Region.Type.FREE;
+            freeRegions.set(region.getIndex());
+        }
+    }
+
+    /***************Core API***************/
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 释放只记为分区的 garbage 巨型对象整体归还
+     */
+    @Override
+    public void free(long point, int size) throws Exception {
+        assert point >= 0 && (point & 7) == 0;
+        CompressedPointers.check(point);
+        Region region = regionOf(point);
+        synchronized (region) {
+            if (region.type == Region.Type.HUMONGOUS) {
+                int count = region.humongousRegions;
+                for (int i = count - 1; i >= 0; i--) {
+                    release(regions[region.getIndex() + i]);
+                }
+                return;
+            }
+            region.garbage += size;
+            // 分区内的空间不会被复用 释放的对象只标记为空闲 遍历时跳过
+            ObjectHeader.setFree(this, point);
+            if (region.retired && region.garbage == region.top) {
+                release(region);
+            }
+        }
+    }
+
+    /**
+     * 分区的释放只是 garbage 的累加 逐个 free 即可
+     */
+    @Override
+    public void freeAll(long[] pointers, int[] sizes) throws Exception {
+        for (int i = 0; i < pointers.length; i++) {
+            free(pointers[i], sizes[i]);
+        }
+    }
+
+    @Override
+    public long allocate(int size) throws OutOfMemoryError, Exception {
+        throw new RuntimeException("not support!");
+    }
+
+    @Override
+    public void move(long srcPoint, long desPoint, int size) throws Exception {
+        CompressedPointers.check(desPoint);
+        copy(srcPoint, desPoint, size);
+        free(srcPoint, size);
+    }
+
+    /**
+     * 新的空间和原来的分区类型相同 巨型对象属于老年代
+     */
+    @Override
+    public long reallocate(long pointer, int size, int newSize) throws OutOfMemoryError, Exception {
+        assert newSize > 0 && (newSize & 7) == 0;
+        Region.Type type = regionOf(pointer).type;
+        if (type == Region.Type.HUMONGOUS) type = Region.Type.OLD;
+        long newPointer = allocate(newSize, type);
+        copy(pointer, newPointer, Math.min(size, newSize));
+        ObjectHeader.setBlockSize(this, newPointer, newSize);
+        free(pointer, size);
+        return newPointer;
+    }
+
+    @Override
+    public void memSet(Object o, String generation) throws IOException, OutOfMemoryError, Exception {
+        if (null == o) return;
+        byte[] serialized = ObjectCodec.serialize(o);
+        int size = ObjectCodec.sizeOf(o, serialized);
+        int aligningSize = ObjectCodec.alignedSizeOf(size);
+        place(o, serialized, size, allocate(aligningSize, typeOf(generation)), aligningSize);
+    }
+
+    @Override
+    public void memSetBatch(Object[] objects, String generation) throws IOException, OutOfMemoryError, Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[][] serialized = new byte[objects.length][];
+        int[] objectSizes = new int[objects.length];
+        int[] sizes = new int[objects.length];
+        for (int i = 0; i < objects.length; i++) {
+            serialized[i] = ObjectCodec.serialize(objects[i], baos);
+            objectSizes[i] = ObjectCodec.sizeOf(objects[i], serialized[i]);
+            sizes[i] = ObjectCodec.alignedSizeOf(objectSizes[i]);
+        }
+        long[] pointers = allocateBatchRaw(sizes, generation);
+        for (int i = 0; i < objects.length; i++) {
+            place(objects[i], serialized[i], objectSizes[i], pointers[i], sizes[i]);
+        }
+    }
+
+    /**
+     * 按顺序把对象打包成不超过半个分区的连续段 每一段只需要一次分配
+     * 超过半个分区的对象单独作为巨型对象分配
+     */
+    @Override
+    public long[] allocateBatch(int[] sizes, String generation) throws OutOfMemoryError, Exception {
+        long[] pointers = allocateBatchRaw(sizes, generation);
+        for (int i = 0; i < sizes.length; i++) {
+            ObjectHeader.initRaw(this, pointers[i], sizes[i]);
+        }
+        return pointers;
+    }
+
+    /**
+     * 不写入对象头 (memSetBatch 随后写入完整的对象头)
+     */
+    private long[] allocateBatchRaw(int[] sizes, String generation) throws OutOfMemoryError, Exception {
+        Region.Type type = typeOf(generation);
+        int spanLimit = regionSize / 2;
+        long[] pointers = new long[sizes.length];
+        int i = 0;
+        while (i < sizes.length) {
+            assert sizes[i] > 0 && (sizes[i] & 7) == 0;
+            if (sizes[i] > spanLimit) {
+                pointers[i] = allocateHumongous(sizes[i]);
+                i++;
+                continue;
+            }
+            int end = i;
+            int total = 0;
+            while (end < sizes.length && total + sizes[end] <= spanLimit) {
+                total += sizes[end++];
+            }
+            long pointer = allocate(total, type);
+            for (; i < end; i++) {
+                pointers[i] = pointer;
+                pointer += sizes[i];
+            }
+        }
+        return pointers;
+    }
+
+    /**
+     * 写入已经分配好的内存 并设置对象的指针和大小 分区在取出时已经清零
+     */
+    private void place(Object o, byte[] serialized, int size, long allocatePoint, int aligningSize) {
+        if (o instanceof SimulatedObj so) {
+            so.setPointer(allocatePoint);
+            so.setSize(size);
+            so.setAligningSize(aligningSize);
+        }
+        ObjectCodec.write(this, allocatePoint, aligningSize, size, o, serialized);
+    }
+
+    /***************Evacuation***************/
+
+    /**
+     * 疏散 需要在STW下 GC 清扫之后调用
+     *
+     * @param liveObjs 所有存活的对象 回收集中不在其中的对象都视为垃圾
+     */
+    public void evacuate(Collection<? extends SimulatedObj> liveObjs) {
+        long begin = System.nanoTime();
+        // 停止所有的当前分配分区 疏散的目标都是新取出的分区 不会和回收集重叠
+        for (Region.Type type : Region.Type.values()) {
+            synchronized (allocLocks[type.ordinal()]) {
+                Region region = allocRegions[type.ordinal()];
+                if (region != null) {
+                    allocRegions[type.ordinal()] = null;
+                    retire(region);
+                }
+            }
+        }
+
+        Map<Region, List<SimulatedObj>> liveByRegion = new HashMap<>();
+        for (SimulatedObj so : liveObjs) {
+            liveByRegion.computeIfAbsent(regionOf(so.getPointer()), k -> new ArrayList<>()).add(so);
+        }
+
+        List<Region> collectionSet = chooseCollectionSet();
+        long copied = 0;
+        int evacuated = 0;
+        for (int i = 0; i < collectionSet.size(); i++) {
+            Region region = collectionSet.get(i);
+            boolean young = region.type == Region.Type.EDEN || region.type == Region.Type.SURVIVOR;
+            int moved = 0;
+            boolean failed = false;
+            for (SimulatedObj so : liveByRegion.getOrDefault(region, List.of())) {
+                int size = so.getAligningSize();
+                Region.Type target = Region.Type.OLD;
+                if (young) {
+                    int age = Math.min(ObjectHeader.getAge(this, so.getPointer()) + 1, AbstractGenerationHeap.MAX_TENURING_THRESHOLD);
+                    ObjectHeader.setAge(this, so.getPointer(), age);
+                    so.setAge(age);
+                    if (age < tenuringThreshold) target = Region.Type.SURVIVOR;
+                }
+                long desPoint;
+                try {
+                    desPoint = allocate(size, target);
+                } catch (OutOfMemoryError e) {
+                    failed = true;
+                    break;
+                }
+                copy(so.getPointer(), desPoint, size);
+                so.setPointer(desPoint);
+                moved += size;
+            }
+            if (failed) {
+                // 疏散失败 剩下的对象留在原地 分区转为老年代 已经移走的部分记为垃圾
+                synchronized (region) {
+                    toOld(region);
+                    region.garbage += moved;
+                }
+                copied += moved;
+                // 回收集中剩下的年轻代分区同样原地转为老年代 不再占用 eden 的上限
+                for (Region rest : collectionSet.subList(i + 1, collectionSet.size())) {
+                    synchronized (rest) {
+                        toOld(rest);
+                    }
+                }
+                logger.warning("Evacuation failed in " + region + ", no free region left.");
+                break;
+            }
+            release(region);
+            copied += moved;
+            evacuated++;
+        }
+
+        long elapsed = System.nanoTime() - begin;
+        if (copied > 0) {
+            copyNanosPerByte = copyNanosPerByte * 0.7 + (double) elapsed / copied * 0.3;
+        }
+        logger.info("Evacuation : collection set " + collectionSet.size() + " regions, evacuated " + evacuated
+                + ", copied " + copied + " bytes in " + elapsed / 1000 + " us, " + getHeapDetails());
+    }
+
+    /**
+     * 分区原地转为老年代 需要持有分区的锁
+     */
+    private void toOld(Region region) {
+        synchronized (freeRegions) {
+            regionCounts[region.type.ordinal()]--;
+            regionCounts[Region.Type.OLD.ordinal()]++;
+            region.type = Region.Type.OLD;
+        }
+    }
+
+    /**
+     * 回收集 所有的年轻代分区 以及在停顿目标内垃圾最多的老年代分区
+     */
+    private List<Region> chooseCollectionSet() {
+        List<Region> collectionSet = new ArrayList<>();
+        List<Region> oldCandidates = new ArrayList<>();
+        long predicted = 0;
+        for (Region region : regions) {
+            switch (region.type) {
+                case EDEN, SURVIVOR -> {
+                    collectionSet.add(region);
+                    predicted += predictCost(region);
+                }
+                case OLD -> {
+                    if (region.garbage > 0) oldCandidates.add(region);
+                }
+                default -> {
+                }
+            }
+        }
+        oldCandidates.sort(Comparator.comparingInt(Region::getGarbage).reversed());
+        for (Region region : oldCandidates) {
+            long cost = predictCost(region);
+            if (predicted + cost > pauseTimeGoalNanos) break;
+            collectionSet.add(region);
+            predicted += cost;
+        }
+        return collectionSet;
+    }
+
+    private long predictCost(Region region) {
+        return (long) (region.getLive() * copyNanosPerByte) + REGION_FIXED_COST_NANOS;
+    }
+
+    /***************Details***************/
+
+    @Override
+    public String getHeapDetails() {
+        synchronized (freeRegions) {
+            return String.format("Heap Capacity: %d, Region Size: %d, Eden Regions: %d, Survivor Regions: %d, Old Regions: %d, Humongous Regions: %d, Free Regions: %d",
+                    capacity,
+                    regionSize,
+                    regionCounts[Region.Type.EDEN.ordinal()],
+                    regionCounts[Region.Type.SURVIVOR.ordinal()],
+                    regionCounts[Region.Type.OLD.ordinal()],
+                    regionCounts[Region.Type.HUMONGOUS.ordinal()] + regionCounts[Region.Type.HUMONGOUS_CONTINUES.ordinal()],
+                    regionCounts[Region.Type.FREE.ordinal()]);
+        }
+    }
+
+    @Override
+    public long allocateOfGeneration(int size, String Generation) throws OutOfMemoryError, Exception {
+        long pointer = allocate(size, typeOf(Generation));
+        ObjectHeader.initRaw(this, pointer, size);
+        return pointer;
+    }
+
+    /**
+     * 老年代包括巨型对象
+     */
+    @Override
+    public long getUsedOfGeneration(String Generation) {
+        Region.Type type = typeOf(Generation);
+        long used = 0;
+        for (Region region : regions) {
+            Region.Type regionType = region.type;
+            if (regionType == type || (type == Region.Type.OLD
+                    && (regionType == Region.Type.HUMONGOUS || regionType == Region.Type.HUMONGOUS_CONTINUES))) {
+                used += region.getLive();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * 空闲池是所有代共享的 eden 受 maxEdenRegions 限制
+     */
+    @Override
+    public long getFreeGeneration(String Generation) {
+        Region.Type type = typeOf(Generation);
+        long freeRegionCount;
+        synchronized (freeRegions) {
+            freeRegionCount = regionCounts[Region.Type.FREE.ordinal()];
+            if (type == Region.Type.EDEN) {
+                freeRegionCount = Math.min(freeRegionCount, maxEdenRegions - regionCounts[Region.Type.EDEN.ordinal()]);
+            }
+        }
+        long free = freeRegionCount << regionShift;
+        Region current = allocRegions[type.ordinal()];
+        if (current != null) {
+            free += regionSize - current.top;
+        }
+        return free;
+    }
+
+    /**
+     * 分区内的对象按 bump-pointer 连续排列 释放的对象在对象头中标记为空闲
+     * survivor 的两个代对应同一种分区 遍历的是所有的 survivor 分区 巨型对象属于老年代
+     */
+    @Override
+    public void walk(String generation, ObjectHeader.Visitor visitor) {
+        Region.Type type = typeOf(generation);
+        for (Region region : regions) {
+            synchronized (region) {
+                if (region.type == Region.Type.HUMONGOUS && type == Region.Type.OLD) {
+                    visitHeader(region.getStart(), visitor);
+                } else if (region.type == type) {
+                    long p = region.getStart();
+                    long end = p + region.top;
+                    while (p < end) {
+                        int blockSize = ObjectHeader.getBlockSize(this, p);
+                        if (blockSize <= 0) {
+                            throw new IllegalStateException("no object header at : " + p + " in " + region);
+                        }
+                        visitHeader(p, visitor);
+                        p += blockSize;
+                    }
+                }
+            }
+        }
+    }
+
+    private void visitHeader(long p, ObjectHeader.Visitor visitor) {
+        int classId = ObjectHeader.getClassId(this, p);
+        if (classId != ClassTable.FREE) {
+            visitor.visit(p, classId, ObjectHeader.getBlockSize(this, p), ObjectHeader.getMarkOf(this, p, classId));
+        }
+    }
+
+    @Override
+    public String getDetails(String Generation) {
+        return String.format("%s: Used: %d, Free: %d", Generation, getUsedOfGeneration(Generation), getFreeGeneration(Generation));
+    }
+}
@@ -0,0 +1,73 @@
+package org.weishen.gc_.heap;
+
+import org.weishen.gc_.heap.inter.HeapWriter;
+import org.weishen.gc_.obj_.inter.CompactSerializable;
+import org.weishen.gc_.obj_.inter.SimulatedObj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * 对象写入堆时的编码 AbstractGenerationHeap 和 JVMRegionGenerationHeap 共用
+ * <p>
+ * 1: CompactSerializable (ASM 增强时生成) : 大小在分配之前计算 字段直接写入分配好的地址 没有中间缓冲
+ * 2: 其他对象 : Java 序列化 先写到缓冲 再拷贝进堆
+ * <p>
+ * serialize 的结果为 null 表示使用 compact 编码
+ * 两种编码之前都有一个对象头 see@ObjectHeader
+ */
+final class ObjectCodec {
+
+    private ObjectCodec() {
+    }
+
+    /**
+     * 单个对象的编码 只有 Java 序列化的路径才会创建缓冲
+     */
+    static byte[] serialize(Object o) throws IOException {
+        if (o instanceof CompactSerializable) return null;
+        return serialize(o, new ByteArrayOutputStream());
+    }
+
+    /**
+     * Java 序列化 baos 可以在多次调用之间复用
+     * compact 的对象不需要序列化 返回 null
+     */
+    static byte[] serialize(Object o, ByteArrayOutputStream baos) throws IOException {
+        if (o instanceof CompactSerializable) return null;
+        baos.reset();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(o);
+            oos.flush();
+        } // 使用try-with-resources自动关闭流
+        return baos.toByteArray();
+    }
+
+    /**
+     * 对象头加上编码后的字节数
+     */
+    static int sizeOf(Object o, byte[] serialized) {
+        return ObjectHeader.SIZE + (serialized == null ? ((CompactSerializable) o).compactSize() : serialized.length);
+    }
+
+    /**
+     * 对齐后的大小 至少 8 字节(没有字段的对象也占据一个地址)
+     */
+    static int alignedSizeOf(int size) {
+        return Math.max(8, (size + 7) & ~7);
+    }
+
+    /**
+     * @param size 对象头加上编码后的字节数 (sizeOf) 与 blockSize 的差记录在对象头中
+     */
+    static void write(HeapWriter out, long pointer, int blockSize, int size, Object o, byte[] serialized) {
+        int age = o instanceof SimulatedObj so ? so.getAge() : 0;
+        ObjectHeader.init(out, pointer, ClassTable.idOf(o.getClass()), blockSize, age, blockSize - size);
+        if (serialized == null) {
+            ((CompactSerializable) o).compactWrite(out, pointer + ObjectHeader.SIZE);
+        } else {
+            out.putBytes(pointer + ObjectHeader.SIZE, serialized, 0, serialized.length);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.weishen.gc_.heap;
+
+import org.weishen.gc_.heap.inter.HeapMemory;
+import org.weishen.gc_.heap.inter.HeapReader;
+import org.weishen.gc_.heap.inter.HeapWriter;
+
+/**
+ * 对象头 每个对象在 getPointer() 处的前 16 字节 字段从 pointer + SIZE 开始
+ * <pre>
+ * [0, 4)   class id    : see@ClassTable 0 表示空闲的块
+ * [4, 8)   block size  : 对象占据的块大小(aligningSize) 遍历堆时跳到下一个对象
+ * [8, 16)  mark word   : 63 .. 11 转发地址(8 字节对齐 低 3 位省略) | 10 .. 8 padding | 6 forwarded | 5 .. 2 age | 1 .. 0 colour
+ * </pre>
+ * - colour    : 三色标记的颜色 (WHITE 0, GREY 1, BLACK 2) GC 标记直接读写对象头
+ * - age       : 经历过的 minor GC 次数 最多 15 (4 bits) see@AbstractGenerationHeap.MAX_TENURING_THRESHOLD
+ * - forwarded : 对象已经被拷贝 转发地址是新的位置 (Cheney 复制 LISP2 整理)
+ * - padding   : 写入堆时 aligningSize - size (0 - 7) 分代的对齐损失按它增减 see@FragmentationStats
+ * 享元原地修改变长字段时不更新 同一个块加上和减去的总是同一个值 统计不会漂移
+ * <p>
+ * 对象头随对象一起被拷贝(move copy compact) 不需要额外维护
+ * <p>
+ * allocateOfGeneration / allocateBatch 分配的原始块只有前 8 字节的对象头 (class id 为 ClassTable.RAW 和 block size)
+ * 没有 mark word (块最小只有 8 字节) 遍历时 mark 为 0 调用者的数据从 pointer + RAW_SIZE 开始
+ * 多字节的值为大端 与 compact 编码一致
+ */
+public final class ObjectHeader {
+
+    public static final int SIZE = 16;
+
+    public static final int RAW_SIZE = 8;
+
+    public static final int CLASS_OFFSET = 0;
+
+    public static final int BLOCK_SIZE_OFFSET = 4;
+
+    public static final int MARK_OFFSET = 8;
+
+    public static final int WHITE = 0;
+
+    public static final int GREY = 1;
+
+    public static final int BLACK = 2;
+
+    private static final long COLOUR_MASK = 0b11;
+
+    private static final int AGE_SHIFT = 2;
+
+    private static final long AGE_MASK = 0b1111L << AGE_SHIFT;
+
+    private static final long FORWARDED = 1L << 6;
+
+    private static final int PADDING_SHIFT = 8;
+
+    private static final long PADDING_MASK = 0b111L << PADDING_SHIFT;
+
+    private static final int FORWARDEE_SHIFT = 8;
+
+    private ObjectHeader() {
+    }
+
+    /**
+     * 写入新对象的对象头 颜色为白色 没有转发
+     */
+    public static void init(HeapWriter out, long pointer, int classId, int blockSize, int age, int padding) {
+        assert padding >= 0 && padding < 8;
+        out.putInt(pointer + CLASS_OFFSET, classId);
+        out.putInt(pointer + BLOCK_SIZE_OFFSET, blockSize);
+        out.putLong(pointer + MARK_OFFSET, (long) age << AGE_SHIFT & AGE_MASK | (long) padding << PADDING_SHIFT);
+    }
+
+    /**
+     * 写入原始块的对象头 see@RAW_SIZE
+     */
+    public static void initRaw(HeapWriter out, long pointer, int blockSize) {
+        out.putInt(pointer + CLASS_OFFSET, ClassTable.RAW);
+        out.putInt(pointer + BLOCK_SIZE_OFFSET, blockSize);
+    }
+
+    /**
+     * 遍历时读取的 mark word 原始块没有 mark word 返回 0
+     */
+    static long getMarkOf(HeapReader in, long pointer, int classId) {
+        return classId == ClassTable.RAW ? 0 : getMark(in, pointer);
+    }
+
+    /**
+     * 块的对齐损失 原始块没有 mark word 为 0
+     */
+    public static int getPadding(HeapReader in, long pointer) {
+        return getClassId(in, pointer) == ClassTable.RAW ? 0 : paddingOf(getMark(in, pointer));
+    }
+
+    public static int getClassId(HeapReader in, long pointer) {
+        return in.getInt(pointer + CLASS_OFFSET);
+    }
+
+    /**
+     * 标记为空闲的块 遍历时跳过 (分区堆释放对象时使用)
+     */
+    public static void setFree(HeapWriter out, long pointer) {
+        out.putInt(pointer + CLASS_OFFSET, ClassTable.FREE);
+    }
+
+    public static int getBlockSize(HeapReader in, long pointer) {
+        return in.getInt(pointer + BLOCK_SIZE_OFFSET);
+    }
+
+    public static void setBlockSize(HeapWriter out, long pointer, int blockSize) {
+        out.putInt(pointer + BLOCK_SIZE_OFFSET, blockSize);
+    }
+
+    public static long getMark(HeapReader in, long pointer) {
+        return in.getLong(pointer + MARK_OFFSET);
+    }
+
+    public static int getColour(HeapReader in, long pointer) {
+        return (int) (getMark(in, pointer) & COLOUR_MASK);
+    }
+
+    public static void setColour(HeapMemory heap, long pointer, int colour) {
+        long mark = getMark(heap, pointer);
+        heap.putLong(pointer + MARK_OFFSET, mark & ~COLOUR_MASK | colour);
+    }
+
+    /**
+     * 原子的颜色转换 只有当前颜色是 expected 时才替换 年龄和转发保留
+     * 多个标记线程同时遇到同一个白色对象时 只有一个能把它染灰 see@org.weishen.gc_.gcm.ThreeColourParallelGraph
+     */
+    public static boolean compareAndSetColour(HeapMemory heap, long pointer, int expected, int colour) {
+        while (true) {
+            long mark = getMark(heap, pointer);
+            if ((mark & COLOUR_MASK) != expected) return false;
+            if (heap.compareAndSetLong(pointer + MARK_OFFSET, mark, mark & ~COLOUR_MASK | colour)) return true;
+        }
+    }
+
+    public static int getAge(HeapReader in, long pointer) {
+        return ageOf(getMark(in, pointer));
+    }
+
+    public static void setAge(HeapMemory heap, long pointer, int age) {
+        long mark = getMark(heap, pointer);
+        heap.putLong(pointer + MARK_OFFSET, mark & ~AGE_MASK | ((long) age << AGE_SHIFT & AGE_MASK));
+    }
+
+    public static boolean isForwarded(HeapReader in, long pointer) {
+        return (getMark(in, pointer) & FORWARDED) != 0;
+    }
+
+    public static long getForwardee(HeapReader in, long pointer) {
+        long mark = getMark(in, pointer);
+        return (mark & FORWARDED) != 0 ? mark >>> FORWARDEE_SHIFT & ~7L : -1;
+    }
+
+    /**
+     * 在原来的位置记录转发地址 颜色 年龄 padding 保留 (转发地址 8 字节对齐 不会覆盖 padding)
+     */
+    public static void forward(HeapMemory heap, long pointer, long forwardee) {
+        assert (forwardee & 7) == 0;
+        long mark = getMark(heap, pointer);
+        heap.putLong(pointer + MARK_OFFSET, forwardee << FORWARDEE_SHIFT | FORWARDED | mark & (AGE_MASK | COLOUR_MASK | PADDING_MASK));
+    }
+
+    /**
+     * 拷贝到新位置之后清除转发
+     */
+    public static void clearForwarded(HeapMemory heap, long pointer) {
+        long mark = getMark(heap, pointer);
+        heap.putLong(pointer + MARK_OFFSET, mark & (AGE_MASK | COLOUR_MASK | PADDING_MASK));
+    }
+
+    public static int ageOf(long mark) {
+        return (int) ((mark & AGE_MASK) >>> AGE_SHIFT);
+    }
+
+    public static int paddingOf(long mark) {
+        return (int) ((mark & PADDING_MASK) >>> PADDING_SHIFT);
+    }
+
+    public static int colourOf(long mark) {
+        return (int) (mark & COLOUR_MASK);
+    }
+
+    /**
+     * 遍历堆时对每个对象的回调 see@org.weishen.gc_.heap.inter.Generation#walk
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(long pointer, int classId, int blockSize, long mark);
+    }
+}
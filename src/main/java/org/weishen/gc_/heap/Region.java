@@ -0,0 +1,96 @@
+package org.weishen.gc_.heap;
+
+/**
+ * 分区堆中的一个分区(region) see@JVMRegionGenerationHeap
+ * <p>
+ * 分区内只使用 bump-pointer 分配 释放的空间只记为 garbage 不在分区内复用
+ * garbage == top 时(整个分区都是垃圾) 整个分区直接归还到空闲池
+ * 否则等待疏散(evacuation): 存活的对象被拷贝到其他分区 整个分区归还
+ * <p>
+ * 分区的锁就是分区对象本身 (synchronized(region))
+ */
+public class Region {
+
+    public enum Type {
+        FREE,
+        EDEN,
+        SURVIVOR,
+        OLD,
+        /**
+         * 巨型对象的起始分区 对象占据连续的 humongousRegions 个分区
+         */
+        HUMONGOUS,
+        /**
+         * 巨型对象的后续分区
+         */
+        HUMONGOUS_CONTINUES
+    }
+
+    private final int index;
+
+    private final long start;
+
+    Type type = Type.FREE;
+
+    /**
+     * 分区内的分配偏移
+     */
+    int top;
+
+    /**
+     * 分区内已释放的字节
+     */
+    int garbage;
+
+    /**
+     * 上一次使用时写过的范围 [0, dirtyTop) 下一次分配出去之前需要清零 0 表示干净
+     */
+    int dirtyTop;
+
+    /**
+     * 是否还是某个代的当前分配分区 不是当前分配分区(retired)才能在全部成为垃圾时直接归还
+     */
+    boolean retired = true;
+
+    /**
+     * 巨型对象覆盖的分区数 只在 HUMONGOUS 分区上有效
+     */
+    int humongousRegions;
+
+    Region(int index, long start) {
+        this.index = index;
+        this.start = start;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getGarbage() {
+        return garbage;
+    }
+
+    /**
+     * 存活(还没有被释放)的字节
+     */
+    public int getLive() {
+        return top - garbage;
+    }
+
+    @Override
+    public String toString() {
+        return "Region " + index + " [" + type + ", top: " + top + ", garbage: " + garbage + "]";
+    }
+}
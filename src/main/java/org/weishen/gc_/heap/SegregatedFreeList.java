@@ -0,0 +1,208 @@
+package org.weishen.gc_.heap;
+
+import org.weishen.gc_.ds.DoublySkipList;
+import org.weishen.gc_.heap.inter.FreeList;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * 分级(segregated)空闲链表的回收集
+ * <p>
+ * first-fit 需要从跳表头部线性遍历 空闲块越多越慢 (O(n))
+ * 这里按大小把空闲块放进不同的索引中:
+ * <p>
+ * 1: 小块 (<= SMALL_LIMIT) 以8字节为一级 每一级一个双向链表 (bins)
+ * bins[size >>> 3] 中的块大小完全相同 精确匹配时直接弹出头部 O(1)
+ * binMap 记录哪些级不为空 没有精确匹配时用 numberOfTrailingZeros 找到下一个不为空的级
+ * <p>
+ * 2: 大块 (> SMALL_LIMIT) 放在按 (size, point) 排序的树中 ceiling 即 best-fit O(log n)
+ * <p>
+ * 3: 地址有序的跳表依然保留 它负责释放时与相邻空闲块的合并
+ * 每个空闲块同时存在于跳表和 bins/树 中 所有的插入和删除都同时维护两边
+ * <p>
+ * bins:
+ * [8]  -> blk -> blk
+ * [16] -> blk
+ * ...
+ * [2048] -> blk
+ * large : {4096@p1, 8192@p0, ...}
+ */
+public class SegregatedFreeList implements FreeList {
+
+    /**
+     * 8字节一级
+     */
+    private static final int SIZE_CLASS_SHIFT = 3;
+
+    /**
+     * 小块的上限 超过的进入大块树
+     */
+    public static final int SMALL_LIMIT = 2048;
+
+    private static final int SMALL_CLASSES = SMALL_LIMIT >>> SIZE_CLASS_SHIFT;
+
+    /**
+     * 空闲块 同时是跳表的 value 和 bins 的链表节点
+     */
+    static final class FreeBlock {
+        final long point;
+        final long size;
+        FreeBlock prev;
+        FreeBlock next;
+
+        FreeBlock(long point, long size) {
+            this.point = point;
+            this.size = size;
+        }
+    }
+
+    private final DoublySkipList<FreeBlock> blocks = new DoublySkipList<>();
+
+    /**
+     * bins[i] 是大小为 i * 8 的空闲块链表头 (i >= 1)
+     */
+    private final FreeBlock[] bins = new FreeBlock[SMALL_CLASSES + 1];
+
+    /**
+     * 第 i 位表示 bins[i] 不为空
+     */
+    private final long[] binMap = new long[(SMALL_CLASSES >>> 6) + 1];
+
+    private final TreeSet<FreeBlock> large = new TreeSet<>(
+            Comparator.<FreeBlock>comparingLong(b -> b.size).thenComparingLong(b -> b.point));
+
+    private final FragmentationStats stats = new FragmentationStats();
+
+    @Override
+    public long allocate(int size) {
+        FreeBlock block = null;
+        int sizeClass = size >>> SIZE_CLASS_SHIFT;
+        if (sizeClass <= SMALL_CLASSES) {
+            // 精确匹配 不需要切分
+            block = bins[sizeClass];
+            if (block == null) {
+                int next = nextNonEmptyBin(sizeClass + 1);
+                if (next > 0) block = bins[next];
+            }
+        }
+        if (block == null) {
+            block = large.ceiling(new FreeBlock(Long.MIN_VALUE, size));
+        }
+        if (block == null) return -1;
+
+        remove(block);
+        long remainingSize = block.size - size;
+        if (remainingSize > 0) {
+            add(block.point + size, remainingSize);
+        }
+        return block.point;
+    }
+
+    @Override
+    public void free(long point, long size) {
+        long mergeStart = point;
+        long mergeSize = size;
+        // 插入后找到地址相邻的前后节点
+        DoublySkipList.SkipListNode<FreeBlock> newNode = blocks.insert(point, null);
+        DoublySkipList.SkipListNode<FreeBlock> prev = newNode.getBackward();
+        DoublySkipList.SkipListNode<FreeBlock> next = newNode.getForward();
+        blocks.delete(point);
+
+        // 向前合并
+        while (prev != null && prev.getValue() != null && prev.getKey() + prev.getValue().size == mergeStart) {
+            FreeBlock b = prev.getValue();
+            mergeStart = b.point;
+            mergeSize += b.size;
+            prev = prev.getBackward();
+            remove(b);
+        }
+        // 向后合并
+        while (next != null && next.getValue() != null && next.getKey() == mergeStart + mergeSize) {
+            FreeBlock b = next.getValue();
+            mergeSize += b.size;
+            next = next.getForward();
+            remove(b);
+        }
+        add(mergeStart, mergeSize);
+    }
+
+    @Override
+    public void forEach(BlockConsumer consumer) {
+        for (DoublySkipList.SkipListNode<FreeBlock> node = blocks.getHeader().getForward(); node != null; node = node.getForward()) {
+            consumer.accept(node.getKey(), node.getValue().size);
+        }
+    }
+
+    @Override
+    public void clear() {
+        blocks.clear();
+        Arrays.fill(bins, null);
+        Arrays.fill(binMap, 0L);
+        large.clear();
+        stats.reset();
+    }
+
+    @Override
+    public FragmentationStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 新的空闲块 同时加入跳表和 bins/树
+     */
+    private void add(long point, long size) {
+        FreeBlock block = new FreeBlock(point, size);
+        blocks.insert(point, block);
+        stats.add(size);
+        if (size <= SMALL_LIMIT) {
+            int sizeClass = (int) (size >>> SIZE_CLASS_SHIFT);
+            FreeBlock head = bins[sizeClass];
+            block.next = head;
+            if (head != null) head.prev = block;
+            bins[sizeClass] = block;
+            binMap[sizeClass >>> 6] |= 1L << sizeClass;
+        } else {
+            large.add(block);
+        }
+    }
+
+    /**
+     * 同时从跳表和 bins/树 中删除
+     */
+    private void remove(FreeBlock block) {
+        blocks.delete(block.point);
+        stats.remove(block.size);
+        if (block.size <= SMALL_LIMIT) {
+            int sizeClass = (int) (block.size >>> SIZE_CLASS_SHIFT);
+            if (block.prev != null) {
+                block.prev.next = block.next;
+            } else {
+                bins[sizeClass] = block.next;
+                if (block.next == null) binMap[sizeClass >>> 6] &= ~(1L << sizeClass);
+            }
+            if (block.next != null) block.next.prev = block.prev;
+            block.prev = block.next = null;
+        } else {
+            large.remove(block);
+        }
+    }
+
+    /**
+     * 从 from 开始(包含) 第一个不为空的级 没有返回 -1
+     */
+    private int nextNonEmptyBin(int from) {
+        if (from > SMALL_CLASSES) return -1;
+        int word = from >>> 6;
+        long bits = binMap[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                int sizeClass = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return sizeClass <= SMALL_CLASSES ? sizeClass : -1;
+            }
+            if (++word >= binMap.length) return -1;
+            bits = binMap[word];
+        }
+    }
+}
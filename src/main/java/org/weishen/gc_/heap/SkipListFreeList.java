@@ -0,0 +1,139 @@
+package org.weishen.gc_.heap;
+
+import org.weishen.gc_.ds.DoublySkipList;
+import org.weishen.gc_.heap.inter.FreeList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于 DoublySkipList 的回收集 first-fit
+ * <p>
+ * 跳表以地址为 key 以空闲块的大小为 value
+ * 分配时找到地址最小的足够大的空闲块 切成 2块 一块是已使用 一块是未使用
+ * 释放时插入跳表 并通过 getBackward() getForward() 与相邻的空闲块合并
+ * <p>
+ * 跳表以空闲块的大小作为 weight 维护每一层跨度内的最大值 (see@DoublySkipList#firstFit)
+ * 查找时整段跳过放不下的跨度 不再需要从头部线性遍历 first-fit 的语义(以及碎片化的表现)不变
+ * <p>
+ * 批量归还(freeAll)时 已有的空闲块和新的块都按地址有序 一次归并 相邻的块在归并时合并
+ * 然后按顺序 append 重建跳表 O(n + k) 代替 k 次插入和邻居合并
+ */
+public class SkipListFreeList implements FreeList {
+
+    private final DoublySkipList<Long> skipList = new DoublySkipList<>(Long::longValue);
+
+    private final FragmentationStats stats = new FragmentationStats();
+
+    @Override
+    public long allocate(int size) {
+        /** 复用已回收的空间  遵循 first fit 找到地址最小的能复用的块 切成 2块 一块是已使用 一块是未使用 **/
+        DoublySkipList.SkipListNode<Long> node = skipList.firstFit(size);
+
+        if (node != null) {
+            long allocatedPointer = node.getKey();
+            long oldSize = node.getValue();
+            long remainingSize = oldSize - size;
+            //
+            skipList.delete(node.getKey());
+            stats.remove(oldSize);
+            if (remainingSize > 0) {
+                skipList.insert(allocatedPointer + size, remainingSize);
+                stats.add(remainingSize);
+            }
+            System.out.println("Find a reusable memory block Point : " + allocatedPointer + " ,new Point : " + (allocatedPointer + size) + ", Old size : " + oldSize + ", reusable : " + size
+                    + ", newSize : " + remainingSize);
+            return allocatedPointer;
+        }
+        return -1;
+    }
+
+    @Override
+    public void free(long point, long size) {
+        // 在跳表中插入新释放的内存块
+        DoublySkipList.SkipListNode<Long> newNode = skipList.insert(point, size);
+        stats.add(size);
+        // 初始化合并范围的起始点和结束点
+        long mergeStart = point;
+        long mergeSize = size;
+
+        // 向前遍历跳表，寻找可以合并的空闲块
+        DoublySkipList.SkipListNode<Long> prev = newNode.getBackward();
+        while (prev != null && prev.getValue() != null && (prev.getKey() + prev.getValue()) == mergeStart) {
+            mergeStart = prev.getKey(); // 更新合并后的起始地址
+            mergeSize += prev.getValue(); // 累加合并后的大小
+            long sizePrev = prev.getKey();
+            skipList.delete(sizePrev); // 删除被合并的节点
+            stats.remove(prev.getValue());
+            prev = prev.getBackward();
+        }
+
+        // 向后遍历跳表，寻找可以合并的空闲块
+        DoublySkipList.SkipListNode<Long> next = newNode.getForward();
+        while (next != null && next.getValue() != null && next.getKey() == mergeStart + mergeSize) {
+            mergeSize += next.getValue(); // 累加合并后的大小
+            skipList.delete(next.getKey()); // 删除被合并的节点
+            stats.remove(next.getValue());
+            next = next.getForward();
+        }
+
+        // 检查是否有合并发生，如果有，则更新跳表
+        if (mergeStart != point || mergeSize != size) {
+            skipList.delete(newNode.getKey()); // 删除原始节点
+            skipList.insert(mergeStart, mergeSize); // 插入合并后的节点
+            stats.remove(size);
+            stats.add(mergeSize);
+            System.out.println("Marge successful  mergeStart: " + mergeStart + ", mergeSize : " + mergeSize);
+        }
+    }
+
+    @Override
+    public void freeAll(long[] points, long[] sizes, int count) {
+        List<long[]> merged = new ArrayList<>();
+        DoublySkipList.SkipListNode<Long> node = skipList.getHeader().getForward();
+        int i = 0;
+        while (node != null || i < count) {
+            long point;
+            long size;
+            if (i >= count || (node != null && node.getKey() < points[i])) {
+                point = node.getKey();
+                size = node.getValue();
+                node = node.getForward();
+            } else {
+                point = points[i];
+                size = sizes[i];
+                i++;
+            }
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && last[0] + last[1] == point) {
+                last[1] += size;
+            } else {
+                merged.add(new long[]{point, size});
+            }
+        }
+        skipList.clear();
+        stats.reset();
+        for (long[] block : merged) {
+            skipList.append(block[0], block[1]);
+            stats.add(block[1]);
+        }
+    }
+
+    @Override
+    public void forEach(BlockConsumer consumer) {
+        for (DoublySkipList.SkipListNode<Long> node = skipList.getHeader().getForward(); node != null; node = node.getForward()) {
+            consumer.accept(node.getKey(), node.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        skipList.clear();
+        stats.reset();
+    }
+
+    @Override
+    public FragmentationStats getStats() {
+        return stats;
+    }
+}
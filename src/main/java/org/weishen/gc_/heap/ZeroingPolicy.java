@@ -0,0 +1,22 @@
+package org.weishen.gc_.heap;
+
+/**
+ * 已释放内存的清零策略
+ * <p>
+ * 分配出去的内存一定是干净(全0)的 区别只在于谁 在什么时候清零
+ * 需要清零的是回收集中的空间 以及 minor GC 整体重置的 eden / from-survivor (分配指针回到起始地址 之上的空间是用过的)
+ * <p>
+ * - ZERO_ON_FREE     : 释放(和重置)时在分代锁内清零 回收集中的块永远是干净的 (原来的行为)
+ * - ZERO_ON_ALLOCATE : 释放时只记录脏区间 分配时只清零与脏区间相交的部分
+ * - BACKGROUND       : 同 ZERO_ON_ALLOCATE 另外由后台线程分小段预先清零脏区间 分配时大多已经是干净的
+ * <p>
+ * 脏/干净的标记见 AbstractGenerationHeap.dirtyRanges 同一段字节不会被清零两次
+ */
+public enum ZeroingPolicy {
+
+    ZERO_ON_FREE,
+
+    ZERO_ON_ALLOCATE,
+
+    BACKGROUND
+}
@@ -0,0 +1,66 @@
+package org.weishen.gc_.heap.inter;
+
+import org.weishen.gc_.heap.FragmentationStats;
+
+/**
+ * 单个分代的回收集(已释放的内存)管理
+ * <p>
+ * 回收集只管理分配指针(top)以下 已经被释放的空间 top 以上的空间由分代的 bump-pointer 分配
+ * 不同的实现代表不同的复用策略 (first-fit, 分级空闲链表...)
+ * <p>
+ * FreeList 不是线程安全的 需要在持有分代锁的情况下访问
+ * <p>
+ * 地址和大小都是 8 的倍数 切分与合并都保持对齐 开启压缩指针时切出的地址总是可以被编码 see@CompressedPointers
+ */
+public interface FreeList {
+
+    /**
+     * 从回收集中切出 size 大小的空间
+     *
+     * @param size 需要的大小(8的倍数)
+     * @return 指针 没有可用的空间返回 -1
+     */
+    long allocate(int size);
+
+    /**
+     * 归还 [point, point + size) 并与相邻的空闲块合并
+     *
+     * @param point 内存块的起始地址（必须是8的倍数）
+     * @param size  内存块的大小（必须是8的倍数）
+     */
+    void free(long point, long size);
+
+    /**
+     * 批量归还 调用方保证块按地址升序 互不重叠 相邻的块已经合并
+     * 默认逐个 free 实现可以用一次线性的合并代替
+     *
+     * @param points 内存块的起始地址
+     * @param sizes  内存块的大小
+     * @param count  块的数量
+     */
+    default void freeAll(long[] points, long[] sizes, int count) {
+        for (int i = 0; i < count; i++) {
+            free(points[i], sizes[i]);
+        }
+    }
+
+    /**
+     * 按地址顺序遍历所有空闲块
+     */
+    void forEach(BlockConsumer consumer);
+
+    /**
+     * 清空回收集
+     */
+    void clear();
+
+    /**
+     * 回收集的碎片统计 在空闲块的增删中增量维护 读取不需要持有分代锁
+     */
+    FragmentationStats getStats();
+
+    @FunctionalInterface
+    interface BlockConsumer {
+        void accept(long point, long size);
+    }
+}
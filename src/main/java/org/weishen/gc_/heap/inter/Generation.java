@@ -1,5 +1,6 @@
 package org.weishen.gc_.heap.inter;
 
+import org.weishen.gc_.heap.ObjectHeader;
 
 /**
  * 分代接口定义了对内存分代管理的基本操作。
@@ -10,13 +11,29 @@ public interface Generation {
     /**
      * 在指定的内存代中申请内存空间。
      *
+     * 返回的块是原始块: 前 8 字节是对象头 (see@ObjectHeader#initRaw) 遍历堆和 GC 依赖它跳过这个块
+     * 调用者的数据从 pointer + ObjectHeader.RAW_SIZE 开始 或者自己写入完整的对象头 (see@ObjectHeader#init)
+     *
      * @param size       申请的内存大小，必须大于0
      * @param Generation 指定的内存代名称
      * @return 分配的内存地址（指针），如果分配失败返回-1
      * @throws OutOfMemoryError 如果在指定的代中没有足够的内存抛出此异常
      * @throws Exception 可能因为内存分配过程中抛出其他异常
      */
-    int allocateOfGeneration(int size, String Generation) throws OutOfMemoryError, Exception;
+    long allocateOfGeneration(int size, String Generation) throws OutOfMemoryError, Exception;
+
+    /**
+     * 在指定的内存代中批量申请内存空间 只需要一次加锁
+     * 实现会尽量预留一段连续的空间 并按顺序切分
+     * 每个块和 allocateOfGeneration 一样是带有对象头的原始块
+     *
+     * @param sizes      每个对象的大小(8的倍数)
+     * @param generation 指定的内存代名称
+     * @return 每个对象的内存地址（指针）与 sizes 一一对应
+     * @throws OutOfMemoryError 如果在指定的代中没有足够的内存抛出此异常
+     * @throws Exception 可能因为内存分配过程中抛出其他异常
+     */
+    long[] allocateBatch(int[] sizes, String generation) throws OutOfMemoryError, Exception;
 
     /**
      * 获取指定代中已使用的内存大小。
@@ -41,5 +58,14 @@ public interface Generation {
      * @return 指定代的详细状态信息
      */
     String getDetails(String Generation);
+
+    /**
+     * 按地址顺序遍历指定代中所有的对象 只读取堆中的对象头 不需要 Java 对象
+     * 需要在 STW 中调用 遍历期间不能有分配和释放
+     *
+     * @param generation 指定的内存代名称
+     * @param visitor    每个对象的回调
+     */
+    void walk(String generation, ObjectHeader.Visitor visitor);
 }
 
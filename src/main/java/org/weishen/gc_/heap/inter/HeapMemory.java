@@ -0,0 +1,15 @@
+package org.weishen.gc_.heap.inter;
+
+/**
+ * 可以直接读写的模拟堆储存 对象头(see@org.weishen.gc_.heap.ObjectHeader)的读-改-写需要同时读写
+ */
+public interface HeapMemory extends HeapReader, HeapWriter {
+
+    /**
+     * 原子的比较并交换 8 字节(大端)的值 并行标记时对象头 mark word 的颜色转换
+     *
+     * @param pointer 必须是 8 的倍数 (不会跨越 chunk / 分区)
+     * @return 当前值等于 expected 并且已经替换为 value 时返回 true
+     */
+    boolean compareAndSetLong(long pointer, long expected, long value);
+}
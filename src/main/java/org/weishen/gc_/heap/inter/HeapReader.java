@@ -0,0 +1,28 @@
+package org.weishen.gc_.heap.inter;
+
+/**
+ * 直接读取模拟堆的储存 与 HeapWriter 对应
+ * <p>
+ * 享元访问器(see@org.weishen.gc_.asm.Flyweight)通过它在 pointer + 字段偏移处读取字段 不需要反序列化
+ * 多字节的值按大端(big-endian)读取
+ * <p>
+ * 只需要实现 getByte / getBytes 储存可以覆盖多字节的读取 一次读完
+ */
+public interface HeapReader {
+
+    byte getByte(long pointer);
+
+    void getBytes(long pointer, byte[] des, int offset, int length);
+
+    default short getShort(long pointer) {
+        return (short) ((getByte(pointer) << 8) | (getByte(pointer + 1) & 0xFF));
+    }
+
+    default int getInt(long pointer) {
+        return (getShort(pointer) << 16) | (getShort(pointer + 2) & 0xFFFF);
+    }
+
+    default long getLong(long pointer) {
+        return ((long) getInt(pointer) << 32) | (getInt(pointer + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,31 @@
+package org.weishen.gc_.heap.inter;
+
+/**
+ * 直接写入模拟堆的储存
+ * <p>
+ * 对象的 compact 编码(see@org.weishen.gc_.obj_.inter.CompactSerializable)通过它把字段直接写到分配好的地址
+ * 不经过中间的 byte[] 多字节的值按大端(big-endian)写入 与 DataOutput 一致
+ * <p>
+ * 只需要实现 putByte / putBytes 储存可以覆盖多字节的写入 一次写完
+ */
+public interface HeapWriter {
+
+    void putByte(long pointer, byte value);
+
+    void putBytes(long pointer, byte[] src, int offset, int length);
+
+    default void putShort(long pointer, short value) {
+        putByte(pointer, (byte) (value >>> 8));
+        putByte(pointer + 1, (byte) value);
+    }
+
+    default void putInt(long pointer, int value) {
+        putShort(pointer, (short) (value >>> 16));
+        putShort(pointer + 2, (short) value);
+    }
+
+    default void putLong(long pointer, long value) {
+        putInt(pointer, (int) (value >>> 32));
+        putInt(pointer + 4, (int) value);
+    }
+}
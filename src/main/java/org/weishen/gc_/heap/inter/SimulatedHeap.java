@@ -7,6 +7,7 @@ import java.io.IOException;
 /**
  * 模拟堆的标准接口。
  * 定义了模拟堆应支持的核心操作，包括创建对象、内存分配和释放等。
+ * 指针是 long 堆可以超过单个Java数组 2GB 的限制
  */
 public interface SimulatedHeap {
 
@@ -23,7 +24,15 @@ public interface SimulatedHeap {
      * @param point 开始释放的内存地址（指针）
      * @param size  要释放的内存大小
      */
-    void free(int point, int size) throws Exception;
+    void free(long point, int size) throws Exception;
+
+    /**
+     * 批量释放 通常是一次清扫中所有死亡的对象 语义同逐个 free
+     *
+     * @param pointers 开始释放的内存地址（指针）
+     * @param sizes    要释放的内存大小 与 pointers 一一对应
+     */
+    void freeAll(long[] pointers, int[] sizes) throws Exception;
 
     /**
      * 申请内存空间。
@@ -33,7 +42,7 @@ public interface SimulatedHeap {
      * @throws OutOfMemoryError 如果没有足够的内存抛出此异常
      * @throws Exception 可能抛出其他异常
      */
-    int allocate(int size) throws OutOfMemoryError, Exception;
+    long allocate(int size) throws OutOfMemoryError, Exception;
 
     /**
      * 将内存从一个位置移动到另一个位置。
@@ -43,13 +52,32 @@ public interface SimulatedHeap {
      * @param size 移动的内存大小
      * @throws Exception 可能抛出移动过程中的异常
      */
-    void move(int srcPoint, int desPoint, int size) throws Exception;
+    void move(long srcPoint, long desPoint, int size) throws Exception;
+
+    /**
+     * 重新分配 语义同 C 的 realloc
+     * 在 pointer 所在的代中分配 newSize 的空间 拷贝原来的 size 字节 再释放原来的空间
+     *
+     * @param pointer 原来的地址
+     * @param size    原来的(对齐)大小
+     * @param newSize 新的(对齐)大小
+     * @return 新的地址
+     */
+    long reallocate(long pointer, int size, int newSize) throws OutOfMemoryError, Exception;
 
 
 
 
     void memSet(Object o, String generation) throws IOException, OutOfMemoryError, Exception;
 
+    /**
+     * 批量写入对象 对象之间在内存中尽量连续 只需要一次分配
+     *
+     * @param objects    需要写入的对象
+     * @param generation 指定的内存代名称
+     */
+    void memSetBatch(Object[] objects, String generation) throws IOException, OutOfMemoryError, Exception;
+
 
 
     String getHeapDetails();
@@ -0,0 +1,26 @@
+package org.weishen.gc_.obj_.inter;
+
+import org.weishen.gc_.heap.inter.HeapWriter;
+
+/**
+ * 紧凑的对象编码 由ASM在增强时按类生成 (see@org.weishen.gc_.asm.CompactSerializerVisitor)
+ * <p>
+ * 和 ObjectOutputStream 不同 没有流的头部 没有类描述 没有中间缓冲
+ * 大小在分配之前计算 字段直接写入堆中分配好的地址 之后可以通过享元访问器(see@org.weishen.gc_.asm.Flyweight)读取
+ * 编码见 see@org.weishen.gc_.asm.CompactCodec
+ * <p>
+ * 只有所有的实例字段都是基本类型 包装类型 String 或 byte[] 的类才会实现此接口
+ * 其他的类依然使用 Java 序列化
+ */
+public interface CompactSerializable {
+
+    /**
+     * 编码后的字节数
+     */
+    int compactSize();
+
+    /**
+     * 把字段写入 [pointer, pointer + compactSize())
+     */
+    void compactWrite(HeapWriter out, long pointer);
+}
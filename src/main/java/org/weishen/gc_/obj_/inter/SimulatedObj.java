@@ -13,23 +13,24 @@ package org.weishen.gc_.obj_.inter;
  */
 public interface SimulatedObj {
 
-    // public int pointer
+    // public long pointer
     // public int size
     // public int aligningSize;
     // public bool isRoot
+    // public int age
 
     /**
      * 设置对象在模拟堆中的起始指针。
      * @param pointer 指向模拟堆中的内存地址。
      */
-    void setPointer(int pointer);
+    void setPointer(long pointer);
 
 
     /**
      * 获取对象在模拟堆中的起始指针。
      * @return 对象的内存起始地址。
      */
-    int getPointer();
+    long getPointer();
 
 
     /**
@@ -67,6 +68,19 @@ public interface SimulatedObj {
      * @return 如果对象是GC根，则返回true；否则返回false。
      */
     boolean getIsRoot();
+
+    /**
+     * 设置对象的年龄。
+     * @param age 对象经历过的 minor GC 次数。
+     */
+    void setAge(int age);
+
+    /**
+     * 获取对象的年龄，达到晋升阈值的对象会被晋升到老年代。
+     * @return 对象经历过的 minor GC 次数。
+     */
+    int getAge();
+
     /**
      * 提供模拟对象的详细信息。
      * @return 模拟对象的状态描述字符串。